@@ -0,0 +1,67 @@
+package com.example.android.sunshine.app;
+
+import android.net.Uri;
+import android.test.AndroidTestCase;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/*
+    Checks that a refresh the user is waiting on never ends up queued behind a prefetch of the
+    same city that is waiting for a connection slot.
+ */
+public class TestForecastFetcher extends AndroidTestCase {
+    private static final String TEST_LOCATION = "94043";
+
+    // Long enough for a request to OWM to succeed or fail, much shorter than the background fetch
+    // is kept waiting
+    private static final long FETCH_TIMEOUT_SECONDS = 60;
+
+    public void testUserFetchDoesNotJoinBackgroundFetch() throws Exception {
+        assertFalse("Error: User and background fetches shouldn't share a flight",
+                ForecastFetcher.buildFlightKey(TEST_LOCATION, false, true).equals(
+                        ForecastFetcher.buildFlightKey(TEST_LOCATION, false, false)));
+
+        final ForecastFetcher fetcher = new ForecastFetcher(mContext);
+        Semaphore permits = ForecastFetcher.getHostPermits(
+                Uri.parse(ForecastFetcher.buildForecastUrl(TEST_LOCATION)).getHost());
+        permits.acquireUninterruptibly(ForecastFetcher.MAX_CONNECTIONS_PER_HOST);
+
+        Thread backgroundFetch = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                fetcher.fetch(TEST_LOCATION, false, false);
+            }
+        });
+        try {
+            backgroundFetch.start();
+            // Wait for the background fetch to queue for a connection slot
+            while (!permits.hasQueuedThreads()) {
+                Thread.sleep(10);
+            }
+
+            FutureTask<ForecastFetcher.Result> userFetch = new FutureTask<>(
+                    new Callable<ForecastFetcher.Result>() {
+                        @Override
+                        public ForecastFetcher.Result call() {
+                            return fetcher.fetch(TEST_LOCATION, false, true);
+                        }
+                    });
+            new Thread(userFetch).start();
+            try {
+                // Whether the request itself succeeds depends on the network
+                userFetch.get(FETCH_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (TimeoutException e) {
+                fail("Error: The user fetch waited behind the background fetch");
+            }
+            assertTrue("Error: The background fetch should still be waiting for a connection slot",
+                    backgroundFetch.isAlive());
+        } finally {
+            permits.release(ForecastFetcher.MAX_CONNECTIONS_PER_HOST);
+            backgroundFetch.join();
+        }
+    }
+}
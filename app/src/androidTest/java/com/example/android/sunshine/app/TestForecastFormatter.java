@@ -0,0 +1,70 @@
+package com.example.android.sunshine.app;
+
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.ForecastBlock;
+import com.example.android.sunshine.app.data.WeatherContract;
+
+/*
+    Checks that the ForecastFormatter formats days the way they were formatted row by row before,
+    and picks up a change of units without being recreated.
+ */
+public class TestForecastFormatter extends AndroidTestCase {
+    public static final String LOG_TAG = TestForecastFormatter.class.getSimpleName();
+
+    private String originalUnits;
+
+    private void setUnits(String units) {
+        PreferenceManager.getDefaultSharedPreferences(mContext).edit()
+                .putString(mContext.getString(R.string.pref_units_key), units)
+                .commit();
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(mContext);
+        originalUnits = preferences.getString(mContext.getString(R.string.pref_units_key),
+                mContext.getString(R.string.pref_units_default));
+        setUnits(mContext.getString(R.string.pref_units_default));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        setUnits(originalUnits);
+        super.tearDown();
+    }
+
+    public void testFormatDays() {
+        long today = WeatherContract.getEpochDay(System.currentTimeMillis());
+        ForecastBlock forecast = new ForecastBlock();
+        forecast.addLocation("99705", null, 0, 0);
+        forecast.addDay(today, 21.6f, 10.2f, 0, 0, 0, 0, 800, "Clear");
+        // Far outside of the labelled days
+        forecast.addDay(today + 400, -3.4f, -8.6f, 0, 0, 0, 0, 600, "Snow");
+
+        ForecastFormatter formatter = new ForecastFormatter(mContext);
+        String[] days = formatter.formatDays(forecast);
+        assertEquals(2, days.length);
+        assertTrue("Error: Unexpected format " + days[0], days[0].endsWith(" - Clear - 22/10"));
+        assertTrue("Error: Days outside of the labels should still be formatted",
+                days[1].endsWith(" - Snow - -3/-9"));
+    }
+
+    public void testUnitsChange() throws InterruptedException {
+        ForecastFormatter formatter = new ForecastFormatter(mContext);
+        assertEquals("22/10", formatter.formatHighLows(21.6, 10.2));
+
+        // Preference listeners are called on the main thread, so give it a moment
+        setUnits(mContext.getString(R.string.pref_units_imperial));
+        String highLow = formatter.formatHighLows(21.6, 10.2);
+        for (int i = 0; i < 50 && !highLow.equals("71/50"); i++) {
+            Thread.sleep(20);
+            highLow = formatter.formatHighLows(21.6, 10.2);
+        }
+        assertEquals("Error: A change of units should be picked up by an existing formatter",
+                "71/50", highLow);
+    }
+}
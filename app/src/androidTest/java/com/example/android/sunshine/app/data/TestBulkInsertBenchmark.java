@@ -0,0 +1,130 @@
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/*
+    Compares the throughput of inserting a large batch of weather rows one SQLiteDatabase.insert
+    at a time, the way bulkInsert used to, against the compiled statement path of the
+    BulkInserter. The timings are only logged since they depend on the device, but both paths
+    must end up writing exactly the same rows.
+ */
+public class TestBulkInsertBenchmark extends AndroidTestCase {
+    public static final String LOG_TAG = TestBulkInsertBenchmark.class.getSimpleName();
+
+    private static final int ROW_COUNT = 10000;
+
+    private WeatherDbHelper dbHelper;
+    private SQLiteDatabase db;
+    private long locationRowId;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        dbHelper = new WeatherDbHelper(mContext);
+        db = dbHelper.getWritableDatabase();
+        locationRowId = db.insert(WeatherContract.LocationEntry.TABLE_NAME, null,
+                TestUtilities.createNorthPoleLocationValues());
+        assertTrue("Error: Failure to insert North Pole Location Values", locationRowId != -1);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        dbHelper.close();
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        super.tearDown();
+    }
+
+    private long countWeatherRows() {
+        return DatabaseUtils.queryNumEntries(db, WeatherEntry.TABLE_NAME);
+    }
+
+    private long insertRowByRow(ContentValues[] values) {
+        long start = System.nanoTime();
+        int insertedCount = 0;
+        db.beginTransaction();
+        try {
+            for (ContentValues contentValues : values) {
+                if (db.insert(WeatherEntry.TABLE_NAME, null, contentValues) != -1) {
+                    insertedCount++;
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        long elapsed = System.nanoTime() - start;
+        assertEquals("Error: Not every row was inserted by SQLiteDatabase.insert",
+                ROW_COUNT, insertedCount);
+        return elapsed;
+    }
+
+    private long insertCompiled(ContentValues[] values) {
+        long start = System.nanoTime();
+        int insertedCount = 0;
+        BulkInserter inserter = new BulkInserter(db, WeatherEntry.TABLE_NAME);
+        db.beginTransaction();
+        try {
+            for (ContentValues contentValues : values) {
+                if (inserter.insert(contentValues) != -1) {
+                    insertedCount++;
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            inserter.close();
+            db.endTransaction();
+        }
+        long elapsed = System.nanoTime() - start;
+        assertEquals("Error: Not every row was inserted by the BulkInserter",
+                ROW_COUNT, insertedCount);
+        return elapsed;
+    }
+
+    public void testBulkInsertThroughput() {
+        ContentValues[] values = TestUtilities.createWeatherDays(locationRowId, ROW_COUNT);
+
+        // Warm up both paths so neither pays for the first compile of the schema
+        insertRowByRow(values);
+        db.delete(WeatherEntry.TABLE_NAME, null, null);
+        insertCompiled(values);
+        db.delete(WeatherEntry.TABLE_NAME, null, null);
+
+        long rowByRowNanos = insertRowByRow(values);
+        assertEquals("Error: Row by row insert wrote the wrong number of rows",
+                ROW_COUNT, countWeatherRows());
+        db.delete(WeatherEntry.TABLE_NAME, null, null);
+
+        long compiledNanos = insertCompiled(values);
+        assertEquals("Error: Compiled insert wrote the wrong number of rows",
+                ROW_COUNT, countWeatherRows());
+
+        Log.d(LOG_TAG, String.format("%d rows: SQLiteDatabase.insert %.1f ms (%.0f rows/s), " +
+                        "BulkInserter %.1f ms (%.0f rows/s)",
+                ROW_COUNT,
+                rowByRowNanos / 1e6, ROW_COUNT / (rowByRowNanos / 1e9),
+                compiledNanos / 1e6, ROW_COUNT / (compiledNanos / 1e9)));
+    }
+
+    public void testCompiledInsertMatchesRowByRow() {
+        ContentValues weatherValues = TestUtilities.createWeatherValues(locationRowId);
+
+        BulkInserter inserter = new BulkInserter(db, WeatherEntry.TABLE_NAME);
+        try {
+            assertTrue("Error: BulkInserter failed to insert a row",
+                    inserter.insert(weatherValues) != -1);
+        } finally {
+            inserter.close();
+        }
+
+        TestUtilities.validateCursor("Error: Compiled insert didn't write the row as given",
+                db.query(WeatherEntry.TABLE_NAME, null, null, null, null, null, null),
+                weatherValues);
+    }
+}
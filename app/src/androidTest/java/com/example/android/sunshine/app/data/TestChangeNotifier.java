@@ -0,0 +1,99 @@
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.ContentObserver;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+    Checks that writes made one row at a time through the WeatherProvider reach observers as a
+    single notification per URI.
+ */
+public class TestChangeNotifier extends AndroidTestCase {
+    private static final int INSERT_COUNT = 20;
+
+    // Long enough for the notification window to close and the observer to be called
+    private static final long SETTLE_MILLIS = 1000;
+
+    /*
+        Counts every onChange it receives on its own thread
+     */
+    static class CountingObserver extends ContentObserver {
+        final HandlerThread handlerThread;
+        final AtomicInteger changeCount = new AtomicInteger();
+
+        static CountingObserver create() {
+            HandlerThread handlerThread = new HandlerThread("CountingObserverThread");
+            handlerThread.start();
+            return new CountingObserver(handlerThread);
+        }
+
+        private CountingObserver(HandlerThread handlerThread) {
+            super(new Handler(handlerThread.getLooper()));
+            this.handlerThread = handlerThread;
+        }
+
+        @Override
+        public void onChange(boolean selfChange) {
+            onChange(selfChange, null);
+        }
+
+        @Override
+        public void onChange(boolean selfChange, Uri uri) {
+            changeCount.incrementAndGet();
+        }
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        db.delete(WeatherEntry.TABLE_NAME, null, null);
+        db.delete(LocationEntry.TABLE_NAME, null, null);
+        dbHelper.close();
+    }
+
+    public void testMergeDropsDescendants() {
+        Uri weatherWithLocation = WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION);
+
+        List<Uri> merged = ChangeNotifier.merge(Arrays.asList(
+                weatherWithLocation, WeatherEntry.CONTENT_URI, LocationEntry.CONTENT_URI));
+
+        assertEquals("Error: A URI below a pending ancestor wasn't dropped",
+                Arrays.asList(WeatherEntry.CONTENT_URI, LocationEntry.CONTENT_URI), merged);
+    }
+
+    public void testInsertLoopNotifiesOnce() throws InterruptedException {
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI,
+                TestUtilities.createNorthPoleLocationValues());
+        long locationRowId = Long.parseLong(locationUri.getLastPathSegment());
+
+        CountingObserver observer = CountingObserver.create();
+        mContext.getContentResolver().registerContentObserver(WeatherEntry.CONTENT_URI, true,
+                observer);
+        try {
+            for (ContentValues weatherValues :
+                    TestUtilities.createWeatherDays(locationRowId, INSERT_COUNT)) {
+                mContext.getContentResolver().insert(WeatherEntry.CONTENT_URI, weatherValues);
+            }
+
+            Thread.sleep(SETTLE_MILLIS);
+            assertEquals("Error: Inserting rows one at a time should notify observers once",
+                    1, observer.changeCount.get());
+        } finally {
+            mContext.getContentResolver().unregisterContentObserver(observer);
+            observer.handlerThread.quit();
+        }
+    }
+}
@@ -17,8 +17,10 @@ package com.example.android.sunshine.app.data;
 
 import android.content.ContentValues;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
 import android.test.AndroidTestCase;
 
 import java.util.HashSet;
@@ -193,6 +195,112 @@ public class TestDb extends AndroidTestCase {
     }
 
 
+    /*
+        Checks that the database uses incremental auto-vacuum and that a vacuum run gives back the
+        pages freed by deleting rows without going over its byte budget
+     */
+    public void testIncrementalVacuum() {
+        WeatherDbHelper dbHelper = new WeatherDbHelper(getContext());
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        assertEquals("Error: The database doesn't use incremental auto-vacuum",
+                2, DatabaseUtils.longForQuery(db, "PRAGMA auto_vacuum", null));
+
+        long locationId = db.insert(WeatherContract.LocationEntry.TABLE_NAME, null,
+                TestUtilities.createNorthPoleLocationValues());
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < 2000; i++) {
+                ContentValues weatherValues = TestUtilities.createWeatherValues(locationId);
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE,
+                        TestUtilities.TEST_DATE + i);
+                db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, weatherValues);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        db.delete(WeatherContract.WeatherEntry.TABLE_NAME, null, null);
+
+        long pageSize = DatabaseUtils.longForQuery(db, "PRAGMA page_size", null);
+        long byteBudget = 4 * pageSize;
+        long bytesReclaimed = dbHelper.incrementalVacuum(byteBudget);
+        assertTrue("Error: Vacuum didn't reclaim any of the deleted pages", bytesReclaimed > 0);
+        assertTrue("Error: Vacuum went over its byte budget", bytesReclaimed <= byteBudget);
+        db.close();
+    }
+
+    /*
+        Reads the autocheckpoint of the connection that writes, which is the one the policy is
+        applied to
+     */
+    private static long readAutoCheckpointPages(SQLiteDatabase db) {
+        db.beginTransaction();
+        try {
+            return DatabaseUtils.longForQuery(db, "PRAGMA wal_autocheckpoint", null);
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /*
+        Checks that the checkpoint policy reaches the connection that writes and can turn
+        automatic checkpoints off and back on
+     */
+    public void testCheckpointPolicy() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            // No write-ahead log to checkpoint
+            return;
+        }
+        WeatherDbHelper dbHelper = new WeatherDbHelper(getContext());
+        try {
+            SQLiteDatabase db = dbHelper.getWritableDatabase();
+            assertEquals(WeatherDbHelper.DEFAULT_WAL_AUTOCHECKPOINT_PAGES,
+                    readAutoCheckpointPages(db));
+
+            dbHelper.setCheckpointPolicy(0);
+            assertEquals("Error: Automatic checkpoints weren't turned off",
+                    0, readAutoCheckpointPages(db));
+            db.insert(WeatherContract.LocationEntry.TABLE_NAME, null,
+                    TestUtilities.createNorthPoleLocationValues());
+            dbHelper.checkpoint();
+
+            dbHelper.setCheckpointPolicy(WeatherDbHelper.DEFAULT_WAL_AUTOCHECKPOINT_PAGES);
+            assertEquals("Error: Automatic checkpoints weren't turned back on",
+                    WeatherDbHelper.DEFAULT_WAL_AUTOCHECKPOINT_PAGES, readAutoCheckpointPages(db));
+        } finally {
+            dbHelper.close();
+        }
+    }
+
+    /*
+        Checks that the catalogue of locations nobody has viewed doesn't count towards the data
+        the retention cap is measured against, while viewed locations and their weather do
+     */
+    public void testEvictableBytes() {
+        WeatherDbHelper dbHelper = new WeatherDbHelper(getContext());
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        long emptyBytes = dbHelper.getEvictableBytes();
+
+        // Catalogue locations are stored without an access time
+        ContentValues catalogueValues = TestUtilities.createNorthPoleLocationValues();
+        long locationId = db.insert(WeatherContract.LocationEntry.TABLE_NAME, null,
+                catalogueValues);
+        assertEquals("Error: A location that was never viewed shouldn't count",
+                emptyBytes, dbHelper.getEvictableBytes());
+
+        ContentValues accessValues = new ContentValues();
+        accessValues.put(WeatherContract.LocationEntry.COLUMN_LAST_ACCESS,
+                System.currentTimeMillis());
+        db.update(WeatherContract.LocationEntry.TABLE_NAME, accessValues, null, null);
+        long viewedBytes = dbHelper.getEvictableBytes();
+        assertTrue("Error: A viewed location should count", viewedBytes > emptyBytes);
+
+        db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null,
+                TestUtilities.createWeatherValues(locationId));
+        assertTrue("Error: Weather should count", dbHelper.getEvictableBytes() > viewedBytes);
+        db.close();
+    }
+
     /*
         Students: This is a helper method for the testWeatherTable quiz. You can move your
         code from testLocationTable to here so that you can call this code from both
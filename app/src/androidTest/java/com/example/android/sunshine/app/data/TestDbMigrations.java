@@ -0,0 +1,253 @@
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TimeZone;
+
+/*
+    Upgrades databases created by every older DATABASE_VERSION to the current one and checks that
+    the cached rows survive and that the resulting schema is the same one onCreate builds for a new
+    install.
+ */
+public class TestDbMigrations extends AndroidTestCase {
+    // The weather table as the first release created it
+    private static final String VERSION_1_WEATHER_TABLE = "CREATE TABLE " + WeatherEntry.TABLE_NAME + " (" +
+            WeatherEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+            WeatherEntry.COLUMN_LOC_KEY + " INTEGER NOT NULL, " +
+            WeatherEntry.COLUMN_DATE + " INTEGER NOT NULL, " +
+            WeatherEntry.COLUMN_SHORT_DESC + " TEXT NOT NULL, " +
+            WeatherEntry.COLUMN_WEATHER_ID + " INTEGER NOT NULL, " +
+            WeatherEntry.COLUMN_MIN_TEMP + " INTEGER NOT NULL, " +
+            WeatherEntry.COLUMN_MAX_TEMP + " INTEGER NOT NULL, " +
+            WeatherEntry.COLUMN_HUMIDITY + " REAL NOT NULL, " +
+            WeatherEntry.COLUMN_PRESSURE + " REAL NOT NULL, " +
+            WeatherEntry.COLUMN_WIND_SPEED + " REAL NOT NULL, " +
+            WeatherEntry.COLUMN_DEGREES + " REAL NOT NULL, " +
+            "FOREIGN KEY (" + WeatherEntry.COLUMN_LOC_KEY + ") REFERENCES " +
+            LocationEntry.TABLE_NAME + "(" + LocationEntry._ID + "), " +
+            "UNIQUE (" + WeatherEntry.COLUMN_DATE + ", " +
+            WeatherEntry.COLUMN_LOC_KEY + ") ON CONFLICT REPLACE);";
+
+    // First version that stores dates at midnight UTC of their day
+    private static final int DATES_AT_UTC_VERSION = 7;
+
+    // The location table as the first release created it
+    private static final String VERSION_1_LOCATION_TABLE = "CREATE TABLE " + LocationEntry.TABLE_NAME + " (" +
+            LocationEntry._ID + " INTEGER PRIMARY KEY, " +
+            LocationEntry.COLUMN_LOCATION_SETTING + " TEXT UNIQUE NOT NULL, " +
+            LocationEntry.COLUMN_CITY_NAME + " TEXT NOT NULL, " +
+            LocationEntry.COLUMN_COORD_LAT + " REAL NOT NULL, " +
+            LocationEntry.COLUMN_COORD_LONG + " REAL NOT NULL);";
+
+    void deleteTheDatabase() {
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteTheDatabase();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteTheDatabase();
+        super.tearDown();
+    }
+
+    /*
+        Creates the database file the way a release with the given DATABASE_VERSION left it. The
+        first schema is created as it shipped and the migrations up to that version are replayed
+        on top of it.
+     */
+    private SQLiteDatabase createDatabaseAtVersion(int version) {
+        SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(
+                mContext.getDatabasePath(WeatherDbHelper.DATABASE_NAME), null);
+        db.execSQL(VERSION_1_WEATHER_TABLE);
+        db.execSQL(VERSION_1_LOCATION_TABLE);
+        WeatherDbMigrations.migrate(db, 1, version);
+        db.setVersion(version);
+        return db;
+    }
+
+    /*
+        Returns every table, index and trigger in the database along with the columns of each
+        table, so two databases can be compared by their schema alone
+     */
+    private Set<String> readSchema(SQLiteDatabase db) {
+        Set<String> schema = new HashSet<>();
+        Cursor objects = db.rawQuery("SELECT type, name FROM sqlite_master " +
+                "WHERE name NOT LIKE 'sqlite_%' AND name != 'android_metadata'", null);
+        try {
+            while (objects.moveToNext()) {
+                String type = objects.getString(0);
+                String name = objects.getString(1);
+                schema.add(type + " " + name);
+                if (!"table".equals(type)) {
+                    continue;
+                }
+
+                Cursor columns = db.rawQuery("PRAGMA table_info(" + name + ")", null);
+                try {
+                    int nameIndex = columns.getColumnIndex("name");
+                    int typeIndex = columns.getColumnIndex("type");
+                    int notNullIndex = columns.getColumnIndex("notnull");
+                    int primaryKeyIndex = columns.getColumnIndex("pk");
+                    while (columns.moveToNext()) {
+                        schema.add(name + "." + columns.getString(nameIndex) + " " +
+                                columns.getString(typeIndex) + " notnull=" +
+                                columns.getInt(notNullIndex) + " pk=" +
+                                columns.getInt(primaryKeyIndex));
+                    }
+                } finally {
+                    columns.close();
+                }
+            }
+        } finally {
+            objects.close();
+        }
+        return schema;
+    }
+
+    private Set<String> readNewInstallSchema() {
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+        try {
+            return readSchema(dbHelper.getWritableDatabase());
+        } finally {
+            dbHelper.close();
+            deleteTheDatabase();
+        }
+    }
+
+    public void testUpgradeFromEveryOlderVersion() {
+        Set<String> newInstallSchema = readNewInstallSchema();
+
+        for (int version = 1; version < WeatherDbHelper.DATABASE_VERSION; version++) {
+            SQLiteDatabase oldDb = createDatabaseAtVersion(version);
+            ContentValues locationValues = TestUtilities.createNorthPoleLocationValues();
+            long locationRowId = oldDb.insert(LocationEntry.TABLE_NAME, null, locationValues);
+            assertTrue("Error: Failure to insert the location at version " + version,
+                    locationRowId != -1);
+            ContentValues weatherValues = TestUtilities.createWeatherValues(locationRowId);
+            ContentValues oldWeatherValues = new ContentValues(weatherValues);
+            if (version < DATES_AT_UTC_VERSION) {
+                // Older versions stored each day at local midnight of the device
+                oldWeatherValues.put(WeatherEntry.COLUMN_DATE, TestUtilities.TEST_DATE -
+                        TimeZone.getDefault().getOffset(TestUtilities.TEST_DATE));
+            }
+            assertTrue("Error: Failure to insert the weather at version " + version,
+                    oldDb.insert(WeatherEntry.TABLE_NAME, null, oldWeatherValues) != -1);
+            oldDb.close();
+
+            WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+            try {
+                SQLiteDatabase db = dbHelper.getWritableDatabase();
+                assertEquals("Error: The database wasn't upgraded from version " + version,
+                        WeatherDbHelper.DATABASE_VERSION, db.getVersion());
+                assertEquals("Error: Upgrading from version " + version +
+                        " didn't produce the schema of a new install", newInstallSchema,
+                        readSchema(db));
+
+                TestUtilities.validateCursor("Error: The location didn't survive the upgrade " +
+                                "from version " + version,
+                        db.query(LocationEntry.TABLE_NAME, null, null, null, null, null, null),
+                        locationValues);
+                TestUtilities.validateCursor("Error: The weather didn't survive the upgrade " +
+                                "from version " + version,
+                        db.query(WeatherEntry.TABLE_NAME, null, null, null, null, null, null),
+                        weatherValues);
+            } finally {
+                dbHelper.close();
+                deleteTheDatabase();
+            }
+        }
+    }
+
+    /*
+        Dates written under different zones can land on the same day once they are normalized.
+        The row written last has to be the one that survives, and no other day may be lost.
+     */
+    public void testNormalizingCollidingDates() {
+        int version = DATES_AT_UTC_VERSION - 1;
+        long localMidnight = TestUtilities.TEST_DATE -
+                TimeZone.getDefault().getOffset(TestUtilities.TEST_DATE);
+        SQLiteDatabase oldDb = createDatabaseAtVersion(version);
+        long locationRowId = oldDb.insert(LocationEntry.TABLE_NAME, null,
+                TestUtilities.createNorthPoleLocationValues());
+
+        // An hour after local midnight is the same day, as if written in a zone an hour away
+        ContentValues olderValues = TestUtilities.createWeatherValues(locationRowId);
+        olderValues.put(WeatherEntry.COLUMN_DATE, localMidnight + 60 * 60 * 1000L);
+        olderValues.put(WeatherEntry.COLUMN_SHORT_DESC, "Comets");
+        assertTrue(oldDb.insert(WeatherEntry.TABLE_NAME, null, olderValues) != -1);
+
+        ContentValues newerValues = TestUtilities.createWeatherValues(locationRowId);
+        newerValues.put(WeatherEntry.COLUMN_DATE, localMidnight);
+        assertTrue(oldDb.insert(WeatherEntry.TABLE_NAME, null, newerValues) != -1);
+
+        ContentValues nextDayValues = TestUtilities.createWeatherValues(locationRowId);
+        nextDayValues.put(WeatherEntry.COLUMN_DATE, localMidnight + EpochDays.MILLIS_PER_DAY);
+        assertTrue(oldDb.insert(WeatherEntry.TABLE_NAME, null, nextDayValues) != -1);
+        oldDb.close();
+
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+        try {
+            SQLiteDatabase db = dbHelper.getWritableDatabase();
+            assertEquals("Error: Colliding days should be merged into one and no day lost",
+                    2, DatabaseUtils.queryNumEntries(db, WeatherEntry.TABLE_NAME));
+
+            ContentValues expectedValues = TestUtilities.createWeatherValues(locationRowId);
+            TestUtilities.validateCursor("Error: The day written last should be kept",
+                    db.query(WeatherEntry.TABLE_NAME, null, WeatherEntry.COLUMN_DATE + " = ?",
+                            new String[] {Long.toString(TestUtilities.TEST_DATE)},
+                            null, null, null),
+                    expectedValues);
+            assertEquals(1, DatabaseUtils.queryNumEntries(db, WeatherEntry.TABLE_NAME,
+                    WeatherEntry.COLUMN_DATE + " = ?",
+                    new String[] {Long.toString(TestUtilities.getTestDate(1))}));
+        } finally {
+            dbHelper.close();
+        }
+    }
+
+    public void testRebuildTableCopiesEveryBatch() {
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+        try {
+            SQLiteDatabase db = dbHelper.getWritableDatabase();
+            db.execSQL("CREATE TABLE rebuild (_id INTEGER PRIMARY KEY, value INTEGER)");
+
+            // Enough rows that the copy takes several batches and ends part way through one
+            int rowCount = WeatherDbMigrations.COPY_BATCH_SIZE * 2 + 7;
+            db.beginTransaction();
+            try {
+                for (int i = 0; i < rowCount; i++) {
+                    db.execSQL("INSERT INTO rebuild (value) VALUES (?)", new Object[] {i});
+                }
+
+                WeatherDbMigrations.rebuildTable(db, "rebuild",
+                        "CREATE TABLE rebuild_new (_id INTEGER PRIMARY KEY, value INTEGER NOT NULL)",
+                        "INSERT INTO rebuild_new (_id, value) SELECT _id, value FROM rebuild");
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+
+            assertEquals("Error: The rebuilt table doesn't have every row",
+                    rowCount, DatabaseUtils.queryNumEntries(db, "rebuild"));
+            assertEquals("Error: The rebuilt table has the wrong values",
+                    (long) rowCount * (rowCount - 1) / 2,
+                    DatabaseUtils.longForQuery(db, "SELECT SUM(value) FROM rebuild", null));
+        } finally {
+            dbHelper.close();
+        }
+    }
+}
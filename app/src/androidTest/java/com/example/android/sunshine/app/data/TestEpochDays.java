@@ -0,0 +1,89 @@
+package com.example.android.sunshine.app.data;
+
+import android.test.AndroidTestCase;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+/*
+    Checks the epoch days worked out from the cached offsets against the days a Calendar gives for
+    the same times, including across daylight saving time changes.
+ */
+public class TestEpochDays extends AndroidTestCase {
+    private static final long MILLIS_PER_HOUR = 60 * 60 * 1000L;
+
+    private static final String[] TEST_ZONES = {
+            "UTC", "America/Los_Angeles", "Europe/London", "Asia/Kolkata", "Australia/Sydney",
+            "Pacific/Kiritimati", "Pacific/Pago_Pago"
+    };
+
+    /*
+        Returns the epoch day of the time according to a Calendar in the zone
+     */
+    private static long getCalendarEpochDay(TimeZone zone, long time) {
+        Calendar local = Calendar.getInstance(zone);
+        local.setTimeInMillis(time);
+        Calendar utc = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        utc.clear();
+        utc.set(local.get(Calendar.YEAR), local.get(Calendar.MONTH),
+                local.get(Calendar.DAY_OF_MONTH));
+        return utc.getTimeInMillis() / EpochDays.MILLIS_PER_DAY;
+    }
+
+    public void testMatchesCalendar() {
+        // Every hour over the last year and the next, which crosses every daylight saving time
+        // change of the zones, and a few years back where the table doesn't reach
+        long now = System.currentTimeMillis();
+        long[][] ranges = {
+                {now - 365 * EpochDays.MILLIS_PER_DAY, now + 365 * EpochDays.MILLIS_PER_DAY},
+                {TestUtilities.TEST_DATE - 200 * EpochDays.MILLIS_PER_DAY,
+                        TestUtilities.TEST_DATE + 200 * EpochDays.MILLIS_PER_DAY}
+        };
+        for (String id : TEST_ZONES) {
+            TimeZone zone = TimeZone.getTimeZone(id);
+            EpochDays days = EpochDays.forZone(zone);
+            for (long[] range : ranges) {
+                for (long time = range[0]; time < range[1]; time += MILLIS_PER_HOUR + 61 * 1000) {
+                    assertEquals("Error: Wrong epoch day in " + id + " at " + time,
+                            getCalendarEpochDay(zone, time), days.toEpochDay(time));
+                }
+            }
+        }
+    }
+
+    public void testZonesAreShared() {
+        assertSame(EpochDays.forZone(TimeZone.getTimeZone("Europe/London")),
+                EpochDays.forZone(TimeZone.getTimeZone("Europe/London")));
+        assertSame("Error: Longitudes in the same hour should share their days",
+                EpochDays.forLongitude(-120.5), EpochDays.forLongitude(-118));
+    }
+
+    public void testFixedOffsets() {
+        // 23:30 on December 19th 2014 UTC is already December 20th an hour east
+        long time = TestUtilities.TEST_DATE - 30 * 60 * 1000;
+        long testEpochDay = WeatherContract.getEpochDayFromDate(TestUtilities.TEST_DATE);
+        assertEquals(testEpochDay - 1, EpochDays.forOffset(0).toEpochDay(time));
+        assertEquals(testEpochDay, EpochDays.forOffset((int) MILLIS_PER_HOUR).toEpochDay(time));
+        assertEquals("Error: 15 degrees east should be an hour ahead of UTC",
+                testEpochDay, EpochDays.forLongitude(15).toEpochDay(time));
+    }
+
+    public void testBeforeEpoch() {
+        assertEquals(-1, EpochDays.forOffset(0).toEpochDay(-1));
+        assertEquals(-1, WeatherContract.getEpochDayFromDate(-EpochDays.MILLIS_PER_DAY));
+        assertEquals(-2, WeatherContract.getEpochDayFromDate(-EpochDays.MILLIS_PER_DAY - 1));
+    }
+
+    public void testNormalizeDate() {
+        long time = TestUtilities.TEST_DATE + 13 * MILLIS_PER_HOUR;
+        long normalizedDate = WeatherContract.normalizeDate(time);
+        assertEquals("Error: Normalized dates should be at midnight UTC",
+                0, normalizedDate % EpochDays.MILLIS_PER_DAY);
+        assertEquals(WeatherContract.getEpochDay(time),
+                WeatherContract.getEpochDayFromDate(normalizedDate));
+        // A time at midnight UTC is still a time, filed under the day it falls on here
+        assertEquals(WeatherContract.getDateFromEpochDay(
+                WeatherContract.getEpochDay(TestUtilities.TEST_DATE)),
+                WeatherContract.normalizeDate(TestUtilities.TEST_DATE));
+    }
+}
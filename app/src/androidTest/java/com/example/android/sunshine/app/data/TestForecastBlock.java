@@ -0,0 +1,124 @@
+package com.example.android.sunshine.app.data;
+
+import android.annotation.TargetApi;
+import android.database.Cursor;
+import android.os.Build;
+import android.os.Bundle;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/*
+    Checks that a ForecastBlock keeps the days of each location together, survives the trip through
+    a Bundle and is written to the WeatherProvider as it was built.
+ */
+public class TestForecastBlock extends AndroidTestCase {
+    private static final long TEST_EPOCH_DAY =
+            WeatherContract.getEpochDayFromDate(TestUtilities.TEST_DATE);
+
+    private static ForecastBlock createBlock() {
+        ForecastBlock block = new ForecastBlock(1, 1);
+        block.addLocation(TestUtilities.TEST_LOCATION, "North Pole", 64.7488, -147.353);
+        for (int i = 0; i < 3; i++) {
+            block.addDay(TEST_EPOCH_DAY + i, 75 + i, 65 - i, 1.2f, 1.3f, 5.5f, 1.1f, 321,
+                    "Asteroids");
+        }
+        block.addNotModified("10001");
+        return block;
+    }
+
+    public void testDaysFollowTheirLocation() {
+        ForecastBlock block = createBlock();
+        ForecastBlock other = createBlock();
+        block.addAll(other);
+
+        assertEquals(4, block.getLocationCount());
+        assertEquals(6, block.getDayCount());
+        assertEquals("Error: The days of an added block should follow the days already there",
+                3, block.getFirstDay(2));
+        assertEquals(3, block.getDayCount(2));
+        assertEquals(TEST_EPOCH_DAY + 1, block.getEpochDay(4));
+        assertTrue(block.isNotModified(3));
+        assertEquals(0, block.getDayCount(3));
+        assertSame("Error: Descriptions should be interned",
+                block.getDescription(0), block.getDescription(5));
+    }
+
+    public void testBundle() {
+        ForecastBlock block = ForecastBlock.fromBundle(createBlock().toBundle());
+
+        assertEquals(2, block.getLocationCount());
+        assertEquals(TestUtilities.TEST_LOCATION, block.getLocationSetting(0));
+        assertEquals(-147.353, block.getLongitude(0));
+        assertEquals(3, block.getDayCount(0));
+        assertEquals(3, block.getFirstDay(1));
+        assertEquals(77f, block.getHigh(2));
+        assertEquals(321, block.getWeatherId(2));
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    public void testInsertForecasts() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            // ContentResolver.call isn't available
+            return;
+        }
+        TestUtilities.deleteAllRecords(mContext);
+
+        Bundle result = mContext.getContentResolver().call(WeatherContract.BASE_CONTENT_URI,
+                WeatherContract.METHOD_INSERT_FORECASTS, null, createBlock().toBundle());
+        assertNotNull(result);
+        assertEquals("Error: Every day of the block should be written",
+                3, result.getInt(WeatherContract.EXTRA_ROWS_INSERTED));
+
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION),
+                new String[] {WeatherEntry.COLUMN_DATE, WeatherEntry.COLUMN_MAX_TEMP},
+                null, null, WeatherEntry.COLUMN_DATE + " ASC");
+        try {
+            assertEquals("Error: The new location should have been inserted with its days",
+                    3, cursor.getCount());
+            assertTrue(cursor.moveToFirst());
+            assertEquals("Error: Epoch days should be stored at midnight UTC of the day",
+                    TestUtilities.TEST_DATE, cursor.getLong(0));
+            assertEquals(75.0, cursor.getDouble(1));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    public void testInsertDayWithoutDescription() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            // ContentResolver.call isn't available
+            return;
+        }
+        TestUtilities.deleteAllRecords(mContext);
+
+        // The parser leaves the description null for a day without a weather object
+        ForecastBlock block = new ForecastBlock(1, 4);
+        block.addLocation(TestUtilities.TEST_LOCATION, "North Pole", 64.7488, -147.353);
+        for (int i = 0; i < 3; i++) {
+            block.addDay(TEST_EPOCH_DAY + i, 75 + i, 65 - i, 1.2f, 1.3f, 5.5f, 1.1f, 321,
+                    "Asteroids");
+        }
+        block.addDay(TEST_EPOCH_DAY + 3, 78, 62, 1.2f, 1.3f, 5.5f, 1.1f, 0, null);
+
+        Bundle result = mContext.getContentResolver().call(WeatherContract.BASE_CONTENT_URI,
+                WeatherContract.METHOD_INSERT_FORECASTS, null, block.toBundle());
+        assertNotNull(result);
+        assertEquals("Error: A day without a description shouldn't stop the block being written",
+                4, result.getInt(WeatherContract.EXTRA_ROWS_INSERTED));
+
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocationWithDate(TestUtilities.TEST_LOCATION,
+                        WeatherContract.getDateFromEpochDay(TEST_EPOCH_DAY + 3)),
+                new String[] {WeatherEntry.COLUMN_SHORT_DESC},
+                null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals("", cursor.getString(0));
+        } finally {
+            cursor.close();
+        }
+    }
+}
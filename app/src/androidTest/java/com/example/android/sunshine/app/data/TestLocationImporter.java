@@ -0,0 +1,100 @@
+package com.example.android.sunshine.app.data;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+
+import java.io.StringReader;
+
+/*
+    Imports small catalogues and checks which lines become locations, that batches are reported
+    and that importing twice doesn't duplicate anything.
+ */
+public class TestLocationImporter extends AndroidTestCase {
+    private static final String CATALOGUE =
+            "# location_setting,city_name,coord_lat,coord_long\n" +
+            "94043,Mountain View,37.3861,-122.0839\n" +
+            "\n" +
+            "20001, \"Washington, D.C.\" ,38.9101,-77.0147\n" +
+            "02134,\"The \"\"Hub\"\"\",42.3601,-71.0589\n" +
+            "99999,Nowhere,not a latitude,0\n" +
+            "00000,Off the map,95,0\n" +
+            "12345,Missing a field,0\n";
+
+    private SQLiteDatabase db;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        db = new WeatherDbHelper(mContext).getWritableDatabase();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        db.close();
+        super.tearDown();
+    }
+
+    private String getCityName(String locationSetting) {
+        Cursor cursor = db.query(LocationEntry.TABLE_NAME,
+                new String[] {LocationEntry.COLUMN_CITY_NAME},
+                LocationEntry.COLUMN_LOCATION_SETTING + " = ?", new String[] {locationSetting},
+                null, null, null);
+        try {
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public void testImportCsv() throws Exception {
+        final int[] reportedCount = {0};
+        LocationImporter importer = new LocationImporter(db,
+                new LocationImporter.ProgressListener() {
+                    @Override
+                    public void onProgress(int importedCount, int skippedCount) {
+                        reportedCount[0] = importedCount;
+                    }
+                });
+
+        assertEquals("Error: Every well-formed line should be imported",
+                3, importer.importCsv(new StringReader(CATALOGUE)));
+        assertEquals("Error: Malformed lines should be skipped", 3, importer.getSkippedCount());
+        assertEquals("Error: The committed batch should be reported", 3, reportedCount[0]);
+
+        assertEquals("Mountain View", getCityName("94043"));
+        assertEquals("Error: Quoted fields should keep their commas",
+                "Washington, D.C.", getCityName("20001"));
+        assertEquals("Error: Doubled quotes should be read as one",
+                "The \"Hub\"", getCityName("02134"));
+        assertNull(getCityName("99999"));
+
+        // Importing again leaves the stored locations alone
+        assertEquals("Error: Known locations should not be imported again",
+                0, new LocationImporter(db, null).importCsv(new StringReader(CATALOGUE)));
+        assertEquals(3, DatabaseUtils.queryNumEntries(db, LocationEntry.TABLE_NAME));
+    }
+
+    public void testImportInBatches() throws Exception {
+        int count = LocationImporter.BATCH_SIZE * 2 + 1;
+        StringBuilder catalogue = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            catalogue.append(i).append(",City ").append(i).append(",0,0\n");
+        }
+
+        final int[] batches = {0};
+        LocationImporter importer = new LocationImporter(db,
+                new LocationImporter.ProgressListener() {
+                    @Override
+                    public void onProgress(int importedCount, int skippedCount) {
+                        batches[0]++;
+                    }
+                });
+        assertEquals(count, importer.importCsv(new StringReader(catalogue.toString())));
+        assertEquals("Error: Every batch should be reported once committed", 3, batches[0]);
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+
+/*
+    Checks that searching locations by city name matches word prefixes, ranks the best matches
+    first and keeps the full-text index in sync with the location table.
+ */
+public class TestLocationSearch extends AndroidTestCase {
+    private static final String[] PROJECTION = {LocationEntry.COLUMN_CITY_NAME};
+
+    private void insertLocation(String locationSetting, String cityName) {
+        ContentValues values = new ContentValues();
+        values.put(LocationEntry.COLUMN_LOCATION_SETTING, locationSetting);
+        values.put(LocationEntry.COLUMN_CITY_NAME, cityName);
+        values.put(LocationEntry.COLUMN_COORD_LAT, 0.0);
+        values.put(LocationEntry.COLUMN_COORD_LONG, 0.0);
+        mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, values);
+    }
+
+    private String[] search(String query) {
+        Cursor cursor = mContext.getContentResolver().query(
+                LocationEntry.buildSearchUri(query, 0), PROJECTION, null, null, null);
+        try {
+            String[] cityNames = new String[cursor.getCount()];
+            for (int i = 0; cursor.moveToNext(); i++) {
+                cityNames[i] = cursor.getString(0);
+            }
+            return cityNames;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        TestUtilities.deleteAllRecords(mContext);
+
+        insertLocation("10001", "New York");
+        insertLocation("YO1", "York");
+        insertLocation("94102", "San Francisco");
+        insertLocation("78201", "San Antonio");
+    }
+
+    public void testBuildMatch() {
+        assertEquals("san* fr*", WeatherProvider.buildLocationMatch("  san fr"));
+        assertEquals("Error: Query syntax should not reach the full-text index",
+                "new* york*", WeatherProvider.buildLocationMatch("\"new\" -york*"));
+        assertNull(WeatherProvider.buildLocationMatch(" -* "));
+    }
+
+    public void testPrefixMatch() {
+        String[] cityNames = search("san fr");
+        assertEquals("Error: Every typed word should have to match", 1, cityNames.length);
+        assertEquals("San Francisco", cityNames[0]);
+
+        assertEquals("Error: Matching should ignore case", 2, search("SAN").length);
+        assertEquals(0, search("").length);
+    }
+
+    public void testRanking() {
+        String[] cityNames = search("yor");
+        assertEquals(2, cityNames.length);
+        assertEquals("Error: Names starting with the typed word should come first",
+                "York", cityNames[0]);
+        assertEquals("New York", cityNames[1]);
+    }
+
+    public void testIndexFollowsLocationTable() {
+        ContentValues values = new ContentValues();
+        values.put(LocationEntry.COLUMN_CITY_NAME, "Santa Fe");
+        mContext.getContentResolver().update(LocationEntry.CONTENT_URI, values,
+                LocationEntry.COLUMN_LOCATION_SETTING + " = ?", new String[] {"78201"});
+        assertEquals("Error: A renamed location should be found by its new name",
+                1, search("santa").length);
+        assertEquals("Error: A renamed location should not be found by its old name",
+                0, search("antonio").length);
+
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI,
+                LocationEntry.COLUMN_LOCATION_SETTING + " = ?", new String[] {"94102"});
+        assertEquals("Error: A deleted location should not be found",
+                0, search("francisco").length);
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+
+/*
+    Checks that nearest-location and bounding-box queries find the right locations, whether the
+    database has an R-tree or only the plain coordinate index.
+ */
+public class TestLocationSpatial extends AndroidTestCase {
+    private static final String[] PROJECTION = {LocationEntry.COLUMN_CITY_NAME};
+
+    private void insertLocation(String locationSetting, String cityName, double lat, double lon) {
+        ContentValues values = new ContentValues();
+        values.put(LocationEntry.COLUMN_LOCATION_SETTING, locationSetting);
+        values.put(LocationEntry.COLUMN_CITY_NAME, cityName);
+        values.put(LocationEntry.COLUMN_COORD_LAT, lat);
+        values.put(LocationEntry.COLUMN_COORD_LONG, lon);
+        mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, values);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        TestUtilities.deleteAllRecords(mContext);
+
+        insertLocation("London, UK", "London", 51.5074, -0.1278);
+        insertLocation("Paris, FR", "Paris", 48.8566, 2.3522);
+        insertLocation("Mountain View, US", "Mountain View", 37.3861, -122.0839);
+    }
+
+    public void testNearest() {
+        Cursor cursor = mContext.getContentResolver().query(
+                LocationEntry.buildNearestUri(50.0, 1.0, 2), PROJECTION, null, null, null);
+        try {
+            assertEquals("Error: Only the asked for number of locations should be returned",
+                    2, cursor.getCount());
+            assertTrue(cursor.moveToFirst());
+            assertEquals("Error: The nearest location should come first", "London",
+                    cursor.getString(0));
+            assertTrue(cursor.moveToNext());
+            assertEquals("Paris", cursor.getString(0));
+            assertTrue("Error: Locations should be ordered by distance",
+                    cursor.getDouble(cursor.getColumnIndex(LocationEntry.COLUMN_DISTANCE)) > 0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public void testNearestFarAway() {
+        // No location is close, so the search has to widen until it finds one
+        Cursor cursor = mContext.getContentResolver().query(
+                LocationEntry.buildNearestUri(-33.8688, 151.2093, 1), PROJECTION, null, null,
+                null);
+        try {
+            assertEquals("Error: A location should be found however far away it is",
+                    1, cursor.getCount());
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public void testBoundingBox() {
+        Cursor cursor = mContext.getContentResolver().query(
+                LocationEntry.buildBoundingBoxUri(45, 55, -5, 5), PROJECTION, null, null,
+                LocationEntry.COLUMN_CITY_NAME + " ASC");
+        try {
+            assertEquals("Error: Only the locations in the box should be returned",
+                    2, cursor.getCount());
+            assertTrue(cursor.moveToFirst());
+            assertEquals("London", cursor.getString(0));
+            assertTrue(cursor.moveToNext());
+            assertEquals("Paris", cursor.getString(0));
+        } finally {
+            cursor.close();
+        }
+    }
+}
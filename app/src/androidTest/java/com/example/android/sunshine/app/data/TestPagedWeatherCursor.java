@@ -0,0 +1,124 @@
+package com.example.android.sunshine.app.data;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.test.AndroidTestCase;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.CursorAdapter;
+import android.widget.TextView;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/*
+    Pages through more days than fit in one page and checks that every day comes back once, in
+    date order, whichever way the cursor is moved.
+ */
+public class TestPagedWeatherCursor extends AndroidTestCase {
+    private static final int DAY_COUNT = 120;
+    private static final int PAGE_SIZE = 50;
+
+    private static final String[] PROJECTION = {
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_MAX_TEMP
+    };
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        TestUtilities.deleteAllRecords(mContext);
+
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI,
+                TestUtilities.createNorthPoleLocationValues());
+        long locationRowId = Long.parseLong(locationUri.getLastPathSegment());
+
+        assertEquals(DAY_COUNT, mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                TestUtilities.createWeatherDays(locationRowId, DAY_COUNT)));
+    }
+
+    public void testFirstPageIsLimited() {
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocationPage(TestUtilities.TEST_LOCATION, 0, 0, PAGE_SIZE),
+                PROJECTION, null, null, null);
+        try {
+            assertEquals("Error: A page should hold no more than the page size",
+                    PAGE_SIZE, cursor.getCount());
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public void testPagesInOrder() {
+        PagedWeatherCursor cursor = new PagedWeatherCursor(mContext.getContentResolver(),
+                TestUtilities.TEST_LOCATION, 0, PROJECTION, PAGE_SIZE);
+        try {
+            assertEquals("Error: Every day should be counted before moving",
+                    DAY_COUNT, cursor.getCount());
+
+            int expected = 0;
+            while (cursor.moveToNext()) {
+                assertEquals("Error: Day out of order while paging forward",
+                        expected, cursor.getInt(1));
+                expected++;
+            }
+            assertEquals(DAY_COUNT, expected);
+
+            // Pages that were released on the way forward are loaded again
+            assertTrue(cursor.moveToPosition(3));
+            assertEquals("Error: Day out of order after moving back", 3, cursor.getInt(1));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public void testMoveToLastCountsEveryPage() {
+        PagedWeatherCursor cursor = new PagedWeatherCursor(mContext.getContentResolver(),
+                TestUtilities.TEST_LOCATION, 0, PROJECTION, PAGE_SIZE);
+        try {
+            assertTrue(cursor.moveToLast());
+            assertEquals(DAY_COUNT, cursor.getCount());
+            assertEquals("Error: The last day should be the newest one",
+                    DAY_COUNT - 1, cursor.getInt(1));
+            assertFalse(cursor.moveToPosition(DAY_COUNT));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public void testAdapterSeesEveryDay() {
+        String[] projection = {
+                WeatherEntry._ID,
+                WeatherEntry.COLUMN_MAX_TEMP
+        };
+        PagedWeatherCursor cursor = new PagedWeatherCursor(mContext.getContentResolver(),
+                TestUtilities.TEST_LOCATION, 0, projection, PAGE_SIZE);
+        CursorAdapter adapter = new CursorAdapter(mContext, cursor, false) {
+            @Override
+            public View newView(Context context, Cursor cursor, ViewGroup parent) {
+                return new TextView(context);
+            }
+
+            @Override
+            public void bindView(View view, Context context, Cursor cursor) {
+                ((TextView) view).setText(cursor.getString(1));
+            }
+        };
+        try {
+            assertEquals("Error: The adapter should see every day before any is shown",
+                    DAY_COUNT, adapter.getCount());
+
+            // Bind the days the way a list view would, from the end back to the start
+            for (int position = DAY_COUNT - 1; position >= 0; position--) {
+                TextView view = (TextView) adapter.getView(position, null, null);
+                assertEquals("Error: The adapter bound the wrong day",
+                        Integer.toString(position), view.getText().toString());
+                assertTrue("Error: Every day should have a row ID",
+                        adapter.getItemId(position) > 0);
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+}
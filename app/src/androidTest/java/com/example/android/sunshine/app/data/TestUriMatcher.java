@@ -20,7 +20,7 @@ import android.test.AndroidTestCase;
 
 /*
     Uncomment this class when you are ready to test your UriMatcher.  Note that this class utilizes
-    constants that are declared with package protection inside of the UriMatcher, which is why
+    constants that are declared with package protection inside of the WeatherUriRouter, which is why
     the test must be in the same data package as the Android app code.  Doing the test this way is
     a nice compromise between data hiding and testability.
  */
@@ -33,24 +33,85 @@ public class TestUriMatcher extends AndroidTestCase {
     private static final Uri TEST_WEATHER_DIR = WeatherContract.WeatherEntry.CONTENT_URI;
     private static final Uri TEST_WEATHER_WITH_LOCATION_DIR = WeatherContract.WeatherEntry.buildWeatherLocation(LOCATION_QUERY);
     private static final Uri TEST_WEATHER_WITH_LOCATION_AND_DATE_DIR = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(LOCATION_QUERY, TEST_DATE);
+    private static final Uri TEST_WEATHER_AGGREGATE_DIR = WeatherContract.WeatherEntry.buildWeatherAggregate(LOCATION_QUERY, TEST_DATE, 0, 7);
     // content://com.example.android.sunshine.app/location"
     private static final Uri TEST_LOCATION_DIR = WeatherContract.LocationEntry.CONTENT_URI;
+    private static final Uri TEST_LOCATION_NEAREST_DIR = WeatherContract.LocationEntry.buildNearestUri(51.5, -0.12, 3);
+    private static final Uri TEST_LOCATION_BOUNDING_BOX_DIR = WeatherContract.LocationEntry.buildBoundingBoxUri(51, 52, -1, 1);
+    private static final Uri TEST_LOCATION_SEARCH_DIR = WeatherContract.LocationEntry.buildSearchUri("Lon", 10);
 
     /*
         Students: This function tests that your UriMatcher returns the correct integer value
-        for each of the Uri types that our ContentProvider can handle.  Uncomment this when you are
-        ready to test your UriMatcher.
+        for each of the Uri types that our ContentProvider can handle.
      */
-//    public void testUriMatcher() {
-//        UriMatcher testMatcher = WeatherProvider.buildUriMatcher();
-//
-//        assertEquals("Error: The WEATHER URI was matched incorrectly.",
-//                testMatcher.match(TEST_WEATHER_DIR), WeatherProvider.WEATHER);
-//        assertEquals("Error: The WEATHER WITH LOCATION URI was matched incorrectly.",
-//                testMatcher.match(TEST_WEATHER_WITH_LOCATION_DIR), WeatherProvider.WEATHER_WITH_LOCATION);
-//        assertEquals("Error: The WEATHER WITH LOCATION AND DATE URI was matched incorrectly.",
-//                testMatcher.match(TEST_WEATHER_WITH_LOCATION_AND_DATE_DIR), WeatherProvider.WEATHER_WITH_LOCATION_AND_DATE);
-//        assertEquals("Error: The LOCATION URI was matched incorrectly.",
-//                testMatcher.match(TEST_LOCATION_DIR), WeatherProvider.LOCATION);
-//    }
+    public void testUriMatcher() {
+        WeatherUriRouter.Request testMatcher = new WeatherUriRouter.Request();
+
+        assertEquals("Error: The WEATHER URI was matched incorrectly.",
+                WeatherUriRouter.route(TEST_WEATHER_DIR, testMatcher), WeatherProvider.WEATHER);
+        assertEquals("Error: The WEATHER WITH LOCATION URI was matched incorrectly.",
+                WeatherUriRouter.route(TEST_WEATHER_WITH_LOCATION_DIR, testMatcher), WeatherProvider.WEATHER_WITH_LOCATION);
+        assertEquals("Error: The WEATHER WITH LOCATION AND DATE URI was matched incorrectly.",
+                WeatherUriRouter.route(TEST_WEATHER_WITH_LOCATION_AND_DATE_DIR, testMatcher), WeatherProvider.WEATHER_WITH_LOCATION_AND_DATE);
+        assertEquals("Error: The WEATHER AGGREGATE URI was matched incorrectly.",
+                WeatherUriRouter.route(TEST_WEATHER_AGGREGATE_DIR, testMatcher), WeatherProvider.WEATHER_AGGREGATE);
+        assertEquals("Error: The LOCATION URI was matched incorrectly.",
+                WeatherUriRouter.route(TEST_LOCATION_DIR, testMatcher), WeatherProvider.LOCATION);
+        assertEquals("Error: The LOCATION NEAREST URI was matched incorrectly.",
+                WeatherUriRouter.route(TEST_LOCATION_NEAREST_DIR, testMatcher), WeatherProvider.LOCATION_NEAREST);
+        assertEquals("Error: The LOCATION BOUNDING BOX URI was matched incorrectly.",
+                WeatherUriRouter.route(TEST_LOCATION_BOUNDING_BOX_DIR, testMatcher), WeatherProvider.LOCATION_BOUNDING_BOX);
+        assertEquals("Error: The LOCATION SEARCH URI was matched incorrectly.",
+                WeatherUriRouter.route(TEST_LOCATION_SEARCH_DIR, testMatcher), WeatherProvider.LOCATION_SEARCH);
+    }
+
+    /*
+        Checks that the router decodes the same parameters the WeatherContract's getters do
+     */
+    public void testRouterParameters() {
+        WeatherUriRouter.Request request = new WeatherUriRouter.Request();
+
+        WeatherUriRouter.route(TEST_WEATHER_WITH_LOCATION_AND_DATE_DIR, request);
+        assertEquals("Error: The location setting should be decoded",
+                LOCATION_QUERY, request.locationSetting);
+        assertEquals(WeatherContract.WeatherEntry.getDateFromUri(
+                TEST_WEATHER_WITH_LOCATION_AND_DATE_DIR), request.date);
+
+        WeatherUriRouter.route(TEST_WEATHER_AGGREGATE_DIR, request);
+        assertEquals(WeatherContract.WeatherEntry.getStartDateFromUri(TEST_WEATHER_AGGREGATE_DIR),
+                request.startDate);
+        assertEquals(0, request.endDate);
+        assertEquals(7, request.bucketDays);
+
+        Uri page = WeatherContract.WeatherEntry.buildWeatherLocationPage(LOCATION_QUERY, 0,
+                TEST_DATE * 1000, 20);
+        assertEquals(WeatherProvider.WEATHER_WITH_LOCATION, WeatherUriRouter.route(page, request));
+        assertEquals(TEST_DATE * 1000, request.afterDate);
+        assertEquals(0, request.startDate);
+        assertEquals(20, request.getPageSize());
+
+        WeatherUriRouter.route(TEST_LOCATION_NEAREST_DIR, request);
+        assertEquals(51.5, request.lat);
+        assertEquals(-0.12, request.lon);
+        assertEquals(3, request.limit);
+
+        WeatherUriRouter.route(TEST_LOCATION_BOUNDING_BOX_DIR, request);
+        assertEquals(-1.0, request.minLon);
+        assertEquals(52.0, request.maxLat);
+
+        Uri search = WeatherContract.LocationEntry.buildSearchUri("San Fr", 0)
+                .buildUpon().appendQueryParameter(
+                        WeatherContract.LocationEntry.PARAM_QUERY, "ignored").build();
+        WeatherUriRouter.route(search, request);
+        assertEquals("Error: Only the first copy of a parameter should count",
+                "San Fr", request.searchQuery);
+
+        assertEquals("Error: A date has to be a number",
+                WeatherUriRouter.NO_MATCH, WeatherUriRouter.route(
+                        Uri.parse("content://" + WeatherContract.CONTENT_AUTHORITY +
+                                "/weather/London/tomorrow"), request));
+        assertEquals("Error: Other authorities should not match",
+                WeatherUriRouter.NO_MATCH, WeatherUriRouter.route(
+                        Uri.parse("content://example.com/weather"), request));
+    }
 }
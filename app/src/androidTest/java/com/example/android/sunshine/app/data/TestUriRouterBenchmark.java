@@ -0,0 +1,161 @@
+package com.example.android.sunshine.app.data;
+
+import android.content.UriMatcher;
+import android.net.Uri;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/*
+    Compares the cost of dispatching the URIs widgets and the sync adapter query most, matched by
+    a UriMatcher and read with the WeatherContract's getters the way the WeatherProvider used to,
+    against the single pass of the WeatherUriRouter. Each URI is parsed from its string every time,
+    like one arriving over binder. The timings are only logged since they depend on the device,
+    but both paths must decode exactly the same values.
+ */
+public class TestUriRouterBenchmark extends AndroidTestCase {
+    public static final String LOG_TAG = TestUriRouterBenchmark.class.getSimpleName();
+
+    private static final int ROUNDS = 20000;
+
+    private static final String[] TEST_URIS = {
+            WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION).toString(),
+            WeatherEntry.buildWeatherLocationWithDate(TestUtilities.TEST_LOCATION,
+                    TestUtilities.TEST_DATE).toString(),
+            WeatherEntry.buildWeatherLocationWithStartDate(TestUtilities.TEST_LOCATION,
+                    TestUtilities.TEST_DATE).toString(),
+            WeatherEntry.buildWeatherLocationPage(TestUtilities.TEST_LOCATION,
+                    TestUtilities.TEST_DATE, TestUtilities.TEST_DATE, 7).toString(),
+            WeatherEntry.buildWeatherAggregate(TestUtilities.TEST_LOCATION,
+                    TestUtilities.TEST_DATE, 0, 7).toString(),
+            LocationEntry.buildNearestUri(64.7488, -147.353, 3).toString(),
+            WeatherEntry.CONTENT_URI.toString()
+    };
+
+    /*
+        The UriMatcher the WeatherProvider used before the router
+     */
+    private static UriMatcher buildUriMatcher() {
+        UriMatcher uriMatcher = new UriMatcher(UriMatcher.NO_MATCH);
+        uriMatcher.addURI(WeatherContract.CONTENT_AUTHORITY, WeatherContract.PATH_WEATHER,
+                WeatherProvider.WEATHER);
+        uriMatcher.addURI(WeatherContract.CONTENT_AUTHORITY, WeatherContract.PATH_LOCATION,
+                WeatherProvider.LOCATION);
+        uriMatcher.addURI(WeatherContract.CONTENT_AUTHORITY, WeatherContract.PATH_LOCATION + "/" +
+                WeatherContract.PATH_NEAREST, WeatherProvider.LOCATION_NEAREST);
+        uriMatcher.addURI(WeatherContract.CONTENT_AUTHORITY, WeatherContract.PATH_LOCATION + "/" +
+                WeatherContract.PATH_BOUNDING_BOX, WeatherProvider.LOCATION_BOUNDING_BOX);
+        uriMatcher.addURI(WeatherContract.CONTENT_AUTHORITY, WeatherContract.PATH_LOCATION + "/" +
+                WeatherContract.PATH_SEARCH, WeatherProvider.LOCATION_SEARCH);
+        uriMatcher.addURI(WeatherContract.CONTENT_AUTHORITY, WeatherContract.PATH_WEATHER + "/*/" +
+                WeatherContract.PATH_AGGREGATE, WeatherProvider.WEATHER_AGGREGATE);
+        uriMatcher.addURI(WeatherContract.CONTENT_AUTHORITY, WeatherContract.PATH_WEATHER + "/*/#",
+                WeatherProvider.WEATHER_WITH_LOCATION_AND_DATE);
+        uriMatcher.addURI(WeatherContract.CONTENT_AUTHORITY, WeatherContract.PATH_WEATHER + "/*",
+                WeatherProvider.WEATHER_WITH_LOCATION);
+        return uriMatcher;
+    }
+
+    /*
+        Matches and reads the URI the way the WeatherProvider used to, into the request so the two
+        paths can be compared
+     */
+    private static void dispatchWithMatcher(UriMatcher matcher, Uri uri,
+                                            WeatherUriRouter.Request request) {
+        request.clear();
+        request.match = matcher.match(uri);
+        switch (request.match) {
+            case WeatherProvider.WEATHER_WITH_LOCATION_AND_DATE:
+                request.locationSetting = WeatherEntry.getLocationSettingFromUri(uri);
+                request.date = WeatherEntry.getDateFromUri(uri);
+                break;
+            case WeatherProvider.WEATHER_AGGREGATE:
+                request.locationSetting = WeatherEntry.getLocationSettingFromUri(uri);
+                request.startDate = WeatherEntry.getStartDateFromUri(uri);
+                request.endDate = WeatherEntry.getEndDateFromUri(uri);
+                request.bucketDays = WeatherEntry.getBucketDaysFromUri(uri);
+                break;
+            case WeatherProvider.WEATHER_WITH_LOCATION:
+                request.locationSetting = WeatherEntry.getLocationSettingFromUri(uri);
+                request.startDate = WeatherEntry.getStartDateFromUri(uri);
+                request.afterDate = WeatherEntry.getAfterDateFromUri(uri);
+                int pageSize = WeatherEntry.getPageSizeFromUri(uri);
+                request.limit = pageSize > 0 ? pageSize : WeatherUriRouter.NO_LIMIT;
+                break;
+            case WeatherProvider.LOCATION_NEAREST:
+                request.lat = LocationEntry.getCoordinateFromUri(uri, LocationEntry.PARAM_LAT);
+                request.lon = LocationEntry.getCoordinateFromUri(uri, LocationEntry.PARAM_LONG);
+                request.limit = LocationEntry.getLimitFromUri(uri);
+                break;
+        }
+    }
+
+    private static long timeMatcher(UriMatcher matcher, WeatherUriRouter.Request request) {
+        long start = System.nanoTime();
+        for (int round = 0; round < ROUNDS; round++) {
+            for (String uri : TEST_URIS) {
+                dispatchWithMatcher(matcher, Uri.parse(uri), request);
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static long timeRouter(WeatherUriRouter.Request request) {
+        long start = System.nanoTime();
+        for (int round = 0; round < ROUNDS; round++) {
+            for (String uri : TEST_URIS) {
+                WeatherUriRouter.route(Uri.parse(uri), request);
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    public void testDispatchThroughput() {
+        UriMatcher matcher = buildUriMatcher();
+        WeatherUriRouter.Request request = new WeatherUriRouter.Request();
+
+        // Warm up both paths
+        timeMatcher(matcher, request);
+        timeRouter(request);
+
+        long matcherNanos = timeMatcher(matcher, request);
+        long routerNanos = timeRouter(request);
+
+        int dispatchCount = ROUNDS * TEST_URIS.length;
+        Log.d(LOG_TAG, String.format("%d URIs: UriMatcher %.1f ms (%.0f ns/URI), " +
+                        "WeatherUriRouter %.1f ms (%.0f ns/URI)",
+                dispatchCount,
+                matcherNanos / 1e6, (double) matcherNanos / dispatchCount,
+                routerNanos / 1e6, (double) routerNanos / dispatchCount));
+    }
+
+    public void testRouterMatchesMatcher() {
+        UriMatcher matcher = buildUriMatcher();
+        WeatherUriRouter.Request expected = new WeatherUriRouter.Request();
+        WeatherUriRouter.Request routed = new WeatherUriRouter.Request();
+
+        for (String uriString : TEST_URIS) {
+            Uri uri = Uri.parse(uriString);
+            dispatchWithMatcher(matcher, uri, expected);
+            WeatherUriRouter.route(uri, routed);
+
+            String error = "Error: The router decoded " + uriString + " differently";
+            assertEquals(error, expected.match, routed.match);
+            assertEquals(error, expected.locationSetting, routed.locationSetting);
+            assertEquals(error, expected.date, routed.date);
+            assertEquals(error, expected.startDate, routed.startDate);
+            assertEquals(error, expected.endDate, routed.endDate);
+            assertEquals(error, expected.afterDate, routed.afterDate);
+            assertEquals(error, expected.bucketDays, routed.bucketDays);
+            if (expected.match == WeatherProvider.LOCATION_NEAREST) {
+                assertEquals(error, expected.lat, routed.lat);
+                assertEquals(error, expected.lon, routed.lon);
+                assertEquals(error, expected.limit, routed.limit);
+            } else if (expected.match == WeatherProvider.WEATHER_WITH_LOCATION) {
+                assertEquals(error, expected.getPageSize(), routed.getPageSize());
+            }
+        }
+    }
+}
@@ -22,7 +22,7 @@ import java.util.Set;
  */
 public class TestUtilities extends AndroidTestCase {
     static final String TEST_LOCATION = "99705";
-    static final long TEST_DATE = 1419033600L;  // December 20th, 2014
+    static final long TEST_DATE = 1419033600000L;  // December 20th, 2014
 
     static void validateCursor(String error, Cursor valueCursor, ContentValues expectedValues) {
         assertTrue("Empty cursor returned. " + error, valueCursor.moveToFirst());
@@ -62,6 +62,35 @@ public class TestUtilities extends AndroidTestCase {
         return weatherValues;
     }
 
+    /*
+        Returns the date stored for the day the given number of days after TEST_DATE
+     */
+    static long getTestDate(int day) {
+        return TEST_DATE + day * EpochDays.MILLIS_PER_DAY;
+    }
+
+    /*
+        Creates dayCount days of the default weather values, one day apart starting on TEST_DATE.
+        The high of each day is its index, so tests can tell the days apart and check their order.
+     */
+    static ContentValues[] createWeatherDays(long locationRowId, int dayCount) {
+        ContentValues[] values = new ContentValues[dayCount];
+        for (int day = 0; day < dayCount; day++) {
+            values[day] = createWeatherValues(locationRowId);
+            values[day].put(WeatherContract.WeatherEntry.COLUMN_DATE, getTestDate(day));
+            values[day].put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, day);
+        }
+        return values;
+    }
+
+    /*
+        Deletes every weather and location row through the provider
+     */
+    static void deleteAllRecords(Context context) {
+        context.getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI, null, null);
+        context.getContentResolver().delete(WeatherContract.LocationEntry.CONTENT_URI, null, null);
+    }
+
     /*
         Students: You can uncomment this helper function once you have finished creating the
         LocationEntry part of the WeatherContract.
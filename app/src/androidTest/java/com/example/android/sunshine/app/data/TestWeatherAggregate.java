@@ -0,0 +1,75 @@
+package com.example.android.sunshine.app.data;
+
+import android.database.Cursor;
+import android.net.Uri;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/*
+    Checks the aggregates of weather/<location>/aggregate against two weeks of known highs.
+ */
+public class TestWeatherAggregate extends AndroidTestCase {
+    private static final int DAY_COUNT = 14;
+
+    private static final String[] PROJECTION = {
+            WeatherEntry.COLUMN_BUCKET_START,
+            WeatherEntry.COLUMN_DAY_COUNT,
+            WeatherEntry.getAggregateColumn(WeatherEntry.FUNCTION_MAX, WeatherEntry.COLUMN_MAX_TEMP),
+            WeatherEntry.getAggregateColumn(WeatherEntry.FUNCTION_AVG, WeatherEntry.COLUMN_MAX_TEMP)
+    };
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        TestUtilities.deleteAllRecords(mContext);
+
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI,
+                TestUtilities.createNorthPoleLocationValues());
+        long locationRowId = Long.parseLong(locationUri.getLastPathSegment());
+
+        // The high of each day is its index, so every aggregate is easy to work out
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                TestUtilities.createWeatherDays(locationRowId, DAY_COUNT));
+    }
+
+    public void testWeeklyBuckets() {
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherAggregate(TestUtilities.TEST_LOCATION,
+                        TestUtilities.TEST_DATE, 0, 7),
+                PROJECTION, null, null, null);
+        try {
+            assertEquals("Error: Two weeks should aggregate into two weekly buckets",
+                    2, cursor.getCount());
+
+            assertTrue(cursor.moveToFirst());
+            assertEquals(TestUtilities.TEST_DATE, cursor.getLong(0));
+            assertEquals(7, cursor.getInt(1));
+            assertEquals(6, cursor.getInt(2));
+            assertEquals(3.0, cursor.getDouble(3), 0.001);
+
+            assertTrue(cursor.moveToNext());
+            assertEquals(TestUtilities.getTestDate(7), cursor.getLong(0));
+            assertEquals(7, cursor.getInt(1));
+            assertEquals(13, cursor.getInt(2));
+            assertEquals(10.0, cursor.getDouble(3), 0.001);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public void testSingleBucketOverRange() {
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherAggregate(TestUtilities.TEST_LOCATION, 0,
+                        TestUtilities.getTestDate(3), 0),
+                PROJECTION, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals("Error: The end of the range should be left out", 3, cursor.getInt(1));
+            assertEquals(2, cursor.getInt(2));
+        } finally {
+            cursor.close();
+        }
+    }
+}
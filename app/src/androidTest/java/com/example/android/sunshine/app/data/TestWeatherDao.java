@@ -0,0 +1,114 @@
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+/*
+    Writes a few days through the WeatherProvider and reads them back through each query of the
+    WeatherDao, checking the values land in the right fields.
+ */
+public class TestWeatherDao extends AndroidTestCase {
+    private static final int DAY_COUNT = 3;
+
+    private WeatherDao dao;
+    private long locationRowId;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        TestUtilities.deleteAllRecords(mContext);
+        dao = new WeatherDao(mContext);
+
+        locationRowId = Long.parseLong(mContext.getContentResolver().insert(
+                LocationEntry.CONTENT_URI, TestUtilities.createNorthPoleLocationValues())
+                .getLastPathSegment());
+
+        ContentValues[] values = TestUtilities.createWeatherDays(locationRowId, DAY_COUNT);
+        for (int day = 0; day < DAY_COUNT; day++) {
+            values[day].put(WeatherEntry.COLUMN_WEATHER_ID, 800 + day);
+        }
+        // Inserted out of order, since the forecast has to come back in date order
+        Collections.reverse(Arrays.asList(values));
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, values);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        TestUtilities.deleteAllRecords(mContext);
+        super.tearDown();
+    }
+
+    public void testReadForecast() {
+        long testEpochDay = WeatherContract.getEpochDayFromDate(TestUtilities.TEST_DATE);
+        ForecastBlock forecast = dao.readForecast(TestUtilities.TEST_LOCATION, testEpochDay + 1);
+
+        assertEquals("Error: Days before the start date should be left out",
+                DAY_COUNT - 1, forecast.getDayCount());
+        for (int day = 0; day < forecast.getDayCount(); day++) {
+            assertEquals("Error: The forecast should be in date order",
+                    testEpochDay + 1 + day, forecast.getEpochDay(day));
+            assertEquals(1f + day, forecast.getHigh(day));
+            assertEquals(65f, forecast.getLow(day));
+            assertEquals(801 + day, forecast.getWeatherId(day));
+            assertEquals("Asteroids", forecast.getDescription(day));
+        }
+    }
+
+    public void testReadFreshness() {
+        WeatherDao.Freshness freshness = new WeatherDao.Freshness();
+        assertTrue(dao.readFreshness(TestUtilities.TEST_LOCATION, freshness));
+        assertTrue(freshness.hasForecast());
+        assertEquals("Error: The newest date should be the last day inserted",
+                TestUtilities.getTestDate(DAY_COUNT - 1), freshness.newestDate);
+        assertTrue("Error: Inserted days should be stamped with the time they were written",
+                freshness.lastUpdated > 0);
+
+        assertTrue(dao.readFreshness("00000", freshness));
+        assertFalse("Error: A location without days shouldn't have a forecast",
+                freshness.hasForecast());
+    }
+
+    public void testFindLocationId() {
+        assertEquals(locationRowId, dao.findLocationId(TestUtilities.TEST_LOCATION));
+        assertEquals(-1, dao.findLocationId("00000"));
+    }
+
+    private static ContentValues createLocationValues(String locationSetting, long lastAccess) {
+        ContentValues values = new ContentValues();
+        values.put(LocationEntry.COLUMN_LOCATION_SETTING, locationSetting);
+        values.put(LocationEntry.COLUMN_CITY_NAME, "Location " + locationSetting);
+        values.put(LocationEntry.COLUMN_COORD_LAT, 40.7);
+        values.put(LocationEntry.COLUMN_COORD_LONG, -74.0);
+        values.put(LocationEntry.COLUMN_LAST_ACCESS, lastAccess);
+        return values;
+    }
+
+    public void testReadViewedLocations() {
+        // A catalogue location that was never viewed and one viewed long before the test location
+        mContext.getContentResolver().insert(LocationEntry.CONTENT_URI,
+                createLocationValues("00000", 0));
+        mContext.getContentResolver().insert(LocationEntry.CONTENT_URI,
+                createLocationValues("10001", 1));
+
+        assertEquals("Error: Viewed locations should come back most recently viewed first",
+                Arrays.asList(TestUtilities.TEST_LOCATION, "10001"),
+                dao.readViewedLocations("94043", 5));
+        assertEquals("Error: The excluded location should be left out",
+                Collections.singletonList("10001"),
+                dao.readViewedLocations(TestUtilities.TEST_LOCATION, 5));
+        assertEquals(1, dao.readViewedLocations("94043", 1).size());
+    }
+
+    public void testFindQuery() {
+        assertSame(WeatherDao.FORECAST, WeatherDao.findQuery(WeatherDao.FORECAST.projection));
+        assertNull("Error: Only the DAO's own projections should be recognized",
+                WeatherDao.findQuery(WeatherDao.FORECAST.projection.clone()));
+        assertNull(WeatherDao.findQuery(null));
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/*
+    Checks that the WeatherRowCache serves the columns callers ask for and never keeps a day that
+    was written while it was being read.
+ */
+public class TestWeatherRowCache extends AndroidTestCase {
+    private static final long TEST_LOCATION_ID = 7;
+
+    private Object[] createRow() {
+        Object[] row = new Object[WeatherRowCache.COLUMNS.length];
+        row[0] = 1L;
+        row[1] = TEST_LOCATION_ID;
+        row[2] = TestUtilities.TEST_DATE;
+        row[3] = "Asteroids";
+        return row;
+    }
+
+    public void testProjectionOfPlainColumns() {
+        String[] projection = {
+                WeatherEntry.TABLE_NAME + "." + WeatherEntry.COLUMN_DATE,
+                WeatherEntry.COLUMN_SHORT_DESC,
+                LocationEntry.TABLE_NAME + "." + LocationEntry._ID
+        };
+        int[] columns = WeatherRowCache.resolveProjection(projection);
+        assertNotNull("Error: Plain columns should be served from the cache", columns);
+
+        Cursor cursor = WeatherRowCache.toCursor(createRow(), projection, columns);
+        try {
+            assertTrue("Error: The cached day wasn't returned", cursor.moveToFirst());
+            assertEquals(TestUtilities.TEST_DATE,
+                    cursor.getLong(cursor.getColumnIndex(WeatherEntry.COLUMN_DATE)));
+            assertEquals("Asteroids", cursor.getString(1));
+            assertEquals(TEST_LOCATION_ID, cursor.getLong(2));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public void testProjectionWithExpressionIsNotCached() {
+        assertNull("Error: Expressions can't be served from the cache",
+                WeatherRowCache.resolveProjection(new String[] {"MAX(" + WeatherEntry.COLUMN_DATE + ")"}));
+    }
+
+    public void testInvalidation() {
+        WeatherRowCache cache = new WeatherRowCache();
+
+        long generation = cache.getGeneration();
+        cache.put(TestUtilities.TEST_LOCATION, TestUtilities.TEST_DATE, createRow(), generation);
+        assertNotNull("Error: The day wasn't cached",
+                cache.get(TestUtilities.TEST_LOCATION, TestUtilities.TEST_DATE));
+
+        cache.invalidateLocation(TEST_LOCATION_ID);
+        assertNull("Error: Inserting weather for the location should drop its days",
+                cache.get(TestUtilities.TEST_LOCATION, TestUtilities.TEST_DATE));
+
+        // A read that started before the write must not put the old day back
+        generation = cache.getGeneration();
+        cache.invalidateAll();
+        cache.put(TestUtilities.TEST_LOCATION, TestUtilities.TEST_DATE, createRow(), generation);
+        assertNull("Error: A day read before a write was cached after it",
+                cache.get(TestUtilities.TEST_LOCATION, TestUtilities.TEST_DATE));
+    }
+
+    /*
+        Reads the short description of the test day through the provider, which caches it
+     */
+    private String readDescription() {
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocationWithDate(TestUtilities.TEST_LOCATION,
+                        TestUtilities.TEST_DATE),
+                new String[] {WeatherEntry.COLUMN_SHORT_DESC}, null, null, null);
+        try {
+            assertTrue("Error: The test day wasn't found", cursor.moveToFirst());
+            return cursor.getString(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public void testUpdateOfLocationDropsItsDays() {
+        TestUtilities.deleteAllRecords(mContext);
+        try {
+            long locationRowId = Long.parseLong(mContext.getContentResolver().insert(
+                    LocationEntry.CONTENT_URI, TestUtilities.createNorthPoleLocationValues())
+                    .getLastPathSegment());
+            mContext.getContentResolver().insert(WeatherEntry.CONTENT_URI,
+                    TestUtilities.createWeatherValues(locationRowId));
+            assertEquals("Asteroids", readDescription());
+
+            ContentValues values = new ContentValues();
+            values.put(WeatherEntry.COLUMN_SHORT_DESC, "Comets");
+            assertEquals(1, mContext.getContentResolver().update(
+                    WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION),
+                    values, null, null));
+            assertEquals("Error: Updating the days of a location should drop them from the cache",
+                    "Comets", readDescription());
+
+            assertEquals("Error: An unknown location has no days to update", 0,
+                    mContext.getContentResolver().update(WeatherEntry.buildWeatherLocation("00000"),
+                            values, null, null));
+        } finally {
+            TestUtilities.deleteAllRecords(mContext);
+        }
+    }
+}
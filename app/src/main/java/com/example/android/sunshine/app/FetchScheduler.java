@@ -0,0 +1,175 @@
+package com.example.android.sunshine.app;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Process;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs forecast fetches on their own threads instead of AsyncTask's process-wide serial executor,
+ * so a slow OWM call can't hold up any other AsyncTask in the app.
+ *
+ * Work is split into two lanes, each with its own threads and concurrency limit:
+ *
+ *      USER_INITIATED for refreshes the user is waiting on
+ *      BACKGROUND for prefetching forecasts nobody is looking at yet
+ *
+ * User-initiated work takes priority. Background tasks don't start while any user-initiated task
+ * is queued or running, and background threads run at background priority. A background task that
+ * is already running pauses before each request it makes to OWM until the user lane is idle again.
+ * Preemption stops there: a request already on the wire is left to finish, since abandoning it
+ * would waste the work done so far. The lanes don't share threads, so a refresh never waits for
+ * one.
+ */
+public class FetchScheduler {
+    private static final int USER_LANE_THREADS = 2;
+    private static final int BACKGROUND_LANE_THREADS = 2;
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    // Guards activeUserTasks. Background tasks wait on it until the user lane is idle.
+    private static final Object laneLock = new Object();
+    private static int activeUserTasks;
+
+    // Set on a thread while it runs a task from the USER_INITIATED lane
+    private static final ThreadLocal<Boolean> userInitiated = new ThreadLocal<Boolean>() {
+        @Override
+        protected Boolean initialValue() {
+            return false;
+        }
+    };
+
+    private static final ThreadPoolExecutor userExecutor =
+            createLaneExecutor(USER_LANE_THREADS, "FetchUser", Process.THREAD_PRIORITY_DEFAULT);
+    private static final ThreadPoolExecutor backgroundExecutor = createLaneExecutor(
+            BACKGROUND_LANE_THREADS, "FetchBackground", Process.THREAD_PRIORITY_BACKGROUND);
+
+    /*
+     * Lane for work the user is actively waiting on, like pressing refresh or opening the forecast
+     */
+    public static final Executor USER_INITIATED = new Executor() {
+        @Override
+        public void execute(final Runnable runnable) {
+            synchronized (laneLock) {
+                activeUserTasks++;
+            }
+            try {
+                userExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        userInitiated.set(true);
+                        try {
+                            runnable.run();
+                        } finally {
+                            userInitiated.set(false);
+                            finishUserTask();
+                        }
+                    }
+                });
+            } catch (RuntimeException e) {
+                finishUserTask();
+                throw e;
+            }
+        }
+    };
+
+    /*
+     * Lane for prefetching. Yields to anything on the USER_INITIATED lane.
+     */
+    public static final Executor BACKGROUND = new Executor() {
+        @Override
+        public void execute(final Runnable runnable) {
+            backgroundExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        waitForIdleUserLane();
+                    } catch (InterruptedException e) {
+                        // The scheduler is going away, so drop the task
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    runnable.run();
+                }
+            });
+        }
+    };
+
+    /*
+     * Creates a pool whose threads run at the given priority, like the ones behind each lane.
+     * Also used for threads that work on behalf of a task already running on a lane.
+     */
+    static ThreadPoolExecutor createLaneExecutor(int threadCount, final String name,
+                                                 final int threadPriority) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                threadCount,
+                threadCount,
+                KEEP_ALIVE_SECONDS,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger(1);
+
+                    @Override
+                    public Thread newThread(final Runnable runnable) {
+                        return new Thread(new Runnable() {
+                            @Override
+                            public void run() {
+                                Process.setThreadPriority(threadPriority);
+                                runnable.run();
+                            }
+                        }, name + " #" + count.getAndIncrement());
+                    }
+                }
+        );
+        // Don't hold on to idle threads between refreshes
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /*
+     * Returns true if the calling thread is running a task from the USER_INITIATED lane
+     */
+    public static boolean isUserInitiated() {
+        return userInitiated.get();
+    }
+
+    private static void finishUserTask() {
+        synchronized (laneLock) {
+            activeUserTasks--;
+            if (activeUserTasks == 0) {
+                laneLock.notifyAll();
+            }
+        }
+    }
+
+    /*
+     * Blocks until no user-initiated task is queued or running. Background work calls this
+     * between steps, so it's paused for as long as the user is waiting on something.
+     */
+    static void waitForIdleUserLane() throws InterruptedException {
+        synchronized (laneLock) {
+            while (activeUserTasks > 0) {
+                laneLock.wait();
+            }
+        }
+    }
+
+    /*
+     * Starts the task on the given lane. Before Honeycomb AsyncTasks already run on a thread pool
+     * and can't be given an executor, so they are started the usual way.
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    public static void execute(FetchWeatherTask task, Executor lane, String... params) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            task.executeOnExecutor(lane, params);
+        } else {
+            task.execute(params);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.os.Process;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Fetches the forecasts of many locations at once. Each location is fetched and parsed on a small
+ * bounded pool of worker threads, and once every fetch has finished the results are written to the
+ * WeatherProvider together in one transaction. The ForecastFetcher limits how many of the workers
+ * can be connected to OWM at the same time.
+ *
+ * Every lane of the FetchScheduler has its own workers, so fetches the user is waiting on never
+ * queue behind a prefetch, and are treated as user-initiated by the ForecastFetcher even though
+ * they don't run on the lane's own threads.
+ */
+public class ForecastFetchEngine {
+    private static final String LOG_TAG = ForecastFetchEngine.class.getSimpleName();
+
+    // Worker threads are kept low since most of their time is spent waiting on the network
+    private static final int WORKER_COUNT = 4;
+
+    private static final ThreadPoolExecutor userWorkers = FetchScheduler.createLaneExecutor(
+            WORKER_COUNT, "FetchEngineUser", Process.THREAD_PRIORITY_DEFAULT);
+    private static final ThreadPoolExecutor backgroundWorkers = FetchScheduler.createLaneExecutor(
+            WORKER_COUNT, "FetchEngineBackground", Process.THREAD_PRIORITY_BACKGROUND);
+
+    private final Context context;
+    private final ForecastFetcher fetcher;
+
+    public ForecastFetchEngine(Context context) {
+        this.context = context;
+        fetcher = new ForecastFetcher(context);
+    }
+
+    /*
+     * Fetches the forecast of every location concurrently and writes them all in one pass.
+     * Locations that already have a forecast in the database are fetched conditionally, so the
+     * ones that haven't changed upstream are only revalidated. Blocks until everything has been
+     * written and returns the number of weather rows written.
+     *
+     * lane is the FetchScheduler lane the caller runs on, which picks the workers and whether the
+     * fetches count against the connections shared with prefetches.
+     */
+    public int fetchAll(List<String> locationSettings, Executor lane) {
+        final boolean userInitiated = lane == FetchScheduler.USER_INITIATED;
+        ThreadPoolExecutor workers = userInitiated ? userWorkers : backgroundWorkers;
+
+        List<Future<ForecastFetcher.Result>> futures = new ArrayList<>(locationSettings.size());
+        for (final String locationSetting : locationSettings) {
+            futures.add(workers.submit(new Callable<ForecastFetcher.Result>() {
+                @Override
+                public ForecastFetcher.Result call() {
+                    return fetcher.fetch(locationSetting,
+                            ForecastFreshness.hasForecast(context, locationSetting),
+                            userInitiated);
+                }
+            }));
+        }
+
+        List<ForecastFetcher.Result> results = new ArrayList<>(futures.size());
+        for (Future<ForecastFetcher.Result> future : futures) {
+            try {
+                ForecastFetcher.Result result = future.get();
+                // Failed fetches are logged by the fetcher, so just leave them out
+                if (result != null) {
+                    results.add(result);
+                }
+            } catch (InterruptedException e) {
+                // Stop waiting and don't bother fetching whatever hasn't started yet
+                for (Future<ForecastFetcher.Result> pending : futures) {
+                    pending.cancel(true);
+                }
+                Thread.currentThread().interrupt();
+                return 0;
+            } catch (ExecutionException e) {
+                Log.e(LOG_TAG, "Error fetching forecast", e);
+            }
+        }
+
+        return fetcher.save(results);
+    }
+}
@@ -0,0 +1,636 @@
+package com.example.android.sunshine.app;
+
+import android.annotation.TargetApi;
+import android.content.ContentProviderOperation;
+import android.content.ContentValues;
+import android.content.OperationApplicationException;
+import android.content.Context;
+import android.database.sqlite.SQLiteException;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.RemoteException;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.EpochDays;
+import com.example.android.sunshine.app.data.ForecastBlock;
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.app.data.WeatherDao;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Fetches and parses the forecast of a single location from OWM and writes it to the
+ * WeatherProvider. Fetching and saving are separate steps so that callers fetching many locations
+ * at once can write all of them in a single batch.
+ *
+ * Methods block, so they must not be called from the main thread. The number of connections open
+ * to a single host at any time is capped across all instances, and identical fetches running at
+ * the same time are collapsed into one.
+ */
+public class ForecastFetcher {
+    private static final String LOG_TAG = ForecastFetcher.class.getSimpleName();
+
+    // Connections open to the same host at the same time, shared by every fetcher in the process.
+    // User-initiated fetches don't count against it.
+    static final int MAX_CONNECTIONS_PER_HOST = 4;
+    private static final Map<String, Semaphore> hostPermits = new HashMap<>();
+
+    // Identical requests made while one is already running share its result
+    private static final SingleFlight<Result> fetchesInFlight = new SingleFlight<>();
+
+    // Additional variables that will temporarily be held here until they are user configurable
+    private static final String FORMAT = "json";
+    private static final String UNITS = "metric";
+    static final int NUM_DAYS = 7;
+
+    // Stored for days that came without a description, as the WeatherProvider does
+    private static final String NO_DESCRIPTION = "";
+
+    private final Context mContext;
+    private final ForecastHttpCache httpCache;
+    private final WeatherDao dao;
+
+    /*
+     * The forecast of one location as parsed from OWM, not yet written to the database. A result
+     * may be shared by every caller that asked for the location while it was being fetched, but
+     * only the first one to save it writes it. The others wait for that write to finish.
+     */
+    public static class Result {
+        public final String locationSetting;
+        // Set when OWM reported that the cached forecast hasn't changed. There are no values then.
+        public final boolean notModified;
+        // The location and its days, or the location alone when it wasn't modified
+        final ForecastBlock forecast;
+        private final AtomicBoolean saveClaimed = new AtomicBoolean();
+        // Counted down once the caller that claimed the save has written the result, or failed to
+        private final CountDownLatch saveFinished = new CountDownLatch(1);
+        private volatile int savedRowCount;
+
+        Result(String locationSetting, boolean notModified) {
+            this.locationSetting = locationSetting;
+            this.notModified = notModified;
+            forecast = new ForecastBlock(1, NUM_DAYS);
+            if (notModified) {
+                forecast.addNotModified(locationSetting);
+            } else {
+                forecast.addLocation(locationSetting, null, 0, 0);
+            }
+        }
+
+        public int getDayCount() {
+            return forecast.getDayCount();
+        }
+
+        /*
+         * Returns true for exactly one caller, which is then responsible for writing the result
+         */
+        boolean claimSave() {
+            return saveClaimed.compareAndSet(false, true);
+        }
+
+        void finishSave(int rowCount) {
+            savedRowCount = rowCount;
+            saveFinished.countDown();
+        }
+
+        /*
+         * Waits for the caller that claimed the save to finish and returns the number of weather
+         * rows it wrote
+         */
+        int awaitSave() throws InterruptedException {
+            saveFinished.await();
+            return savedRowCount;
+        }
+    }
+
+    public ForecastFetcher(Context context) {
+        mContext = context;
+        httpCache = new ForecastHttpCache(context);
+        dao = new WeatherDao(context);
+    }
+
+    static Semaphore getHostPermits(String host) {
+        synchronized (hostPermits) {
+            Semaphore permits = hostPermits.get(host);
+            if (permits == null) {
+                permits = new Semaphore(MAX_CONNECTIONS_PER_HOST, true);
+                hostPermits.put(host, permits);
+            }
+            return permits;
+        }
+    }
+
+    /*
+     * Builds the OWM request URL for the location. Also used as the key of the HTTP cache.
+     */
+    static String buildForecastUrl(String locationSetting) {
+        // Construct the URL for the OpenWeatherMap query
+        // Possible parameters are available at OWM's forecast API page at:
+        // http://openweathermap.org/API#forecast
+        final String QUERY_PARAM = "q";
+        final String FORMAT_PARAMS = "mode";
+        final String UNITS_PARAM = "units";
+        final String DAYS_PARAMS = "cnt";
+        final String API_PARAM = "APPID";
+
+        Uri.Builder builder = new Uri.Builder();
+        builder.scheme("http")
+                .authority("api.openweathermap.org")
+                .appendPath("data")
+                .appendPath("2.5")
+                .appendPath("forecast")
+                .appendPath("daily?")
+                .appendQueryParameter(QUERY_PARAM, locationSetting)
+                .appendQueryParameter(FORMAT_PARAMS, FORMAT)
+                .appendQueryParameter(UNITS_PARAM, UNITS)
+                .appendQueryParameter(DAYS_PARAMS, Integer.toString(NUM_DAYS))
+                .appendQueryParameter(API_PARAM, BuildConfig.OPEN_WEATHER_MAP_API_KEY);
+
+        return builder.build().toString();
+    }
+
+    /*
+     * Helper method to handle insertion of a new location in the weather database. Returns the
+     * row ID of the location, whether it was just inserted or already existed.
+     */
+    long addLocation(String locationSetting, String cityName, double lat, double lon) {
+        // Check if the location already exists in the database
+        long locationId = findLocationId(locationSetting);
+        if (locationId != -1) {
+            return locationId;
+        }
+
+        Uri insertedUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI,
+                buildLocationValues(locationSetting, cityName, lat, lon));
+        return Long.parseLong(insertedUri.getLastPathSegment());
+    }
+
+    /*
+     * Returns the row ID of the location, or -1 if it isn't in the database yet
+     */
+    private long findLocationId(String locationSetting) {
+        return dao.findLocationId(locationSetting);
+    }
+
+    private static ContentValues buildLocationValues(String locationSetting, String cityName,
+                                                     double lat, double lon) {
+        ContentValues locationValues = new ContentValues();
+        locationValues.put(LocationEntry.COLUMN_LOCATION_SETTING, locationSetting);
+        locationValues.put(LocationEntry.COLUMN_CITY_NAME, cityName);
+        locationValues.put(LocationEntry.COLUMN_COORD_LAT, lat);
+        locationValues.put(LocationEntry.COLUMN_COORD_LONG, lon);
+        return locationValues;
+    }
+
+    /*
+     * Writes the location and the days read from the OWM response into the forecast block of the
+     * Result. Days arrive in order, so each one is appended.
+     *
+     * Each day is filed under its date where the location is, not where the device is. Until the
+     * city says otherwise that is assumed to be the device's time zone.
+     */
+    private static class ForecastCollector implements ForecastJsonParser.Callback {
+        final ForecastBlock forecast;
+        EpochDays days = EpochDays.forDevice();
+        // The forecast starts today, for days that don't say when they are
+        long epochStartDay = days.toEpochDay(System.currentTimeMillis());
+
+        ForecastCollector(Result result) {
+            forecast = result.forecast;
+        }
+
+        @Override
+        public void onCity(String cityName, double latitude, double longitude,
+                           int utcOffsetSeconds) {
+            forecast.setCity(0, cityName, latitude, longitude);
+            if (utcOffsetSeconds != ForecastJsonParser.UNKNOWN_OFFSET) {
+                days = EpochDays.forOffset(utcOffsetSeconds * 1000);
+            } else {
+                // Close enough to put each forecast on the right day
+                days = EpochDays.forLongitude(longitude);
+            }
+            epochStartDay = days.toEpochDay(System.currentTimeMillis());
+        }
+
+        @Override
+        public void onDay(int dayIndex, ForecastJsonParser.Day day) {
+            long epochDay = day.time > 0
+                    ? days.toEpochDay(day.time * 1000)
+                    : epochStartDay + dayIndex;
+            forecast.addDay(epochDay, (float) day.high, (float) day.low,
+                    (float) day.humidity, (float) day.pressure, (float) day.windSpeed,
+                    (float) day.windDirection, day.weatherId, day.description);
+        }
+    }
+
+    /*
+     * Parse the JSON string returned from OWM and pull the required data from the JSON Object.
+     * Only used on devices without android.util.JsonReader (pre-Honeycomb), where it passes the
+     * values to the collector the same way the streaming parser does.
+     */
+    private static void getWeatherDataFromString(String forecastJsonStr, int numDays,
+                                                 ForecastCollector collector)
+            throws JSONException {
+        // These are the names of the JSON objects that need to be extracted.
+        final String OWM_CITY = "city";
+        final String OWM_CITY_NAME = "name";
+        final String OWM_COORD = "coord";
+        final String OWM_LATITUDE = "lat";
+        final String OWM_LONGITUDE = "lon";
+        final String OWM_TIMEZONE = "timezone";
+
+        final String OWM_LIST = "list";
+        final String OWM_TIME = "dt";
+        final String OWM_WEATHER = "weather";
+        final String OWM_TEMPERATURE = "main";
+        final String OWM_MAX = "temp_max";
+        final String OWM_MIN = "temp_min";
+        final String OWM_HUMIDITY = "humidity";
+        final String OWM_PRESSURE = "pressure";
+        final String OWM_WIND = "wind";
+        final String OWM_WIND_SPEED = "speed";
+        final String OWM_WIND_DIRECTION = "deg";
+        final String OWM_DESCRIPTION = "main";
+        final String OWM_WEATHER_ID = "id";
+
+        JSONObject forecastJson = new JSONObject(forecastJsonStr);
+
+        JSONObject cityJson = forecastJson.optJSONObject(OWM_CITY);
+        if (cityJson != null) {
+            JSONObject coordJson = cityJson.getJSONObject(OWM_COORD);
+            collector.onCity(cityJson.getString(OWM_CITY_NAME),
+                    coordJson.getDouble(OWM_LATITUDE), coordJson.getDouble(OWM_LONGITUDE),
+                    cityJson.has(OWM_TIMEZONE)
+                            ? cityJson.getInt(OWM_TIMEZONE)
+                            : ForecastJsonParser.UNKNOWN_OFFSET);
+        }
+
+        JSONArray weatherArray = forecastJson.getJSONArray(OWM_LIST);
+
+        // Utilize iteration to go through the number of days specified
+        int dayCount = Math.min(numDays, weatherArray.length());
+        ForecastJsonParser.Day day = new ForecastJsonParser.Day();
+
+        for (int i = 0; i < dayCount; i++) {
+            JSONObject dayObject = weatherArray.getJSONObject(i);
+            day.clear();
+            day.time = dayObject.optLong(OWM_TIME, 0);
+
+            // Get the min/max temperature, humidity and pressure of the day
+            JSONObject temperatureObject = dayObject.getJSONObject(OWM_TEMPERATURE);
+            day.high = temperatureObject.getDouble(OWM_MAX);
+            day.low = temperatureObject.getDouble(OWM_MIN);
+            day.humidity = temperatureObject.optDouble(OWM_HUMIDITY, 0);
+            day.pressure = temperatureObject.optDouble(OWM_PRESSURE, 0);
+
+            JSONObject windObject = dayObject.optJSONObject(OWM_WIND);
+            day.windSpeed = windObject != null ? windObject.optDouble(OWM_WIND_SPEED, 0) : 0;
+            day.windDirection = windObject != null ? windObject.optDouble(OWM_WIND_DIRECTION, 0) : 0;
+
+            // Get the weather description for the day. A day without one is kept, as the
+            // streaming parser does.
+            JSONArray weatherObjects = dayObject.optJSONArray(OWM_WEATHER);
+            JSONObject weatherObject = weatherObjects != null
+                    ? weatherObjects.optJSONObject(0)
+                    : null;
+            if (weatherObject != null) {
+                day.description = weatherObject.optString(OWM_DESCRIPTION, null);
+                day.weatherId = weatherObject.optInt(OWM_WEATHER_ID);
+            }
+
+            collector.onDay(i, day);
+        }
+    }
+
+    /*
+     * Fetches and parses the forecast for the location from OWM. When conditional is set, the
+     * request carries the validators of the last response so OWM can answer 304 if nothing
+     * changed. Only ask for that when the forecast is in the database, since a 304 leaves nothing
+     * else to show. Returns null if the request failed.
+     *
+     * If the same forecast is already being fetched on the same lane, this waits for that request
+     * and returns its result rather than making another one.
+     */
+    public Result fetch(String locationSetting, boolean conditional) {
+        return fetch(locationSetting, conditional, FetchScheduler.isUserInitiated());
+    }
+
+    /*
+     * Same as fetch(locationSetting, conditional), for threads working on behalf of a task on one
+     * of the FetchScheduler's lanes. userInitiated says whether that is the USER_INITIATED lane.
+     */
+    public Result fetch(final String locationSetting, final boolean conditional,
+                        final boolean userInitiated) {
+        String key = buildFlightKey(locationSetting, conditional, userInitiated);
+        try {
+            return fetchesInFlight.execute(key, new Callable<Result>() {
+                @Override
+                public Result call() {
+                    return fetchFromNetwork(locationSetting, conditional, userInitiated);
+                }
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            Log.e(LOG_TAG, "Error fetching forecast", e);
+        }
+        return null;
+    }
+
+    /*
+     * Everything that changes the response is part of the key. A conditional request may be
+     * answered with 304 and no days, so it can't stand in for an unconditional one. The lane is
+     * part of it too: a background fetch waits for a connection slot at background priority, so a
+     * refresh the user is waiting on must never join one.
+     */
+    static String buildFlightKey(String locationSetting, boolean conditional,
+                                 boolean userInitiated) {
+        return locationSetting + "|" + UNITS + "|" + NUM_DAYS + "|" + conditional + "|" +
+                (userInitiated ? "user" : "background");
+    }
+
+    private Result fetchFromNetwork(String locationSetting, boolean conditional,
+                                    boolean userInitiated) {
+        // Defined outside of the try-catch block so they can be closed in the finally block.
+        HttpURLConnection urlConnection = null;
+        BufferedReader reader = null;
+        Semaphore permits = null;
+
+        try {
+            String urlString = buildForecastUrl(locationSetting);
+            URL url = new URL(urlString);
+
+            // Make the request conditional if the forecast for this URL has been cached before.
+            ForecastHttpCache.Entry cachedEntry = conditional ? httpCache.get(urlString) : null;
+
+            // Wait for a free connection slot to OWM. Refreshes the user is waiting on are already
+            // capped by the threads of their lane, or the ForecastFetchEngine's workers for it,
+            // and must not queue behind prefetches. Prefetches also hold off while a refresh is
+            // running, even if they started before it.
+            if (!userInitiated) {
+                FetchScheduler.waitForIdleUserLane();
+                permits = getHostPermits(url.getHost());
+                permits.acquire();
+            }
+
+            // Create the request to OpenWeatherMap and open the connection
+            urlConnection = (HttpURLConnection) url.openConnection();
+            urlConnection.setRequestMethod("GET");
+            ForecastHttpCache.addConditionalHeaders(urlConnection, cachedEntry);
+            urlConnection.connect();
+
+            if (cachedEntry != null &&
+                    urlConnection.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                // Nothing has changed upstream, so there's nothing to download or parse
+                return new Result(locationSetting, true);
+            }
+
+            InputStream inputStream = urlConnection.getInputStream();
+            if (inputStream == null) {
+                // Nothing to do.
+                return null;
+            }
+            reader = new BufferedReader(new InputStreamReader(inputStream, "UTF-8"));
+
+            Result result = new Result(locationSetting, false);
+            ForecastCollector collector = new ForecastCollector(result);
+
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+                // Parse the forecast directly off the connection
+                ForecastJsonParser.parse(reader, NUM_DAYS, collector);
+            } else {
+                // JsonReader isn't available, so read the input stream into string
+                StringBuilder buffer = new StringBuilder();
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    buffer.append(line);
+                }
+
+                if (buffer.length() == 0) {
+                    // Empty stream. Can't parse nothing.
+                    return null;
+                }
+
+                // Parse the JSON String
+                getWeatherDataFromString(buffer.toString(), NUM_DAYS, collector);
+            }
+
+            httpCache.put(urlString, urlConnection);
+            return result;
+
+        } catch (JSONException e) {
+            Log.d(LOG_TAG, e.getMessage(), e);
+            e.printStackTrace();
+        } catch (IOException e) {
+            // Unable to get weather data, so no need to parse.
+            Log.e(LOG_TAG, "Error ", e);
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            // Cancelled while waiting for the user lane or a connection slot
+            Thread.currentThread().interrupt();
+            permits = null;
+        } catch (Exception e) {
+            Log.e(LOG_TAG, e.toString());
+        } finally {
+            // Close opened resources
+            if (urlConnection != null) {
+                urlConnection.disconnect();
+            }
+            if (permits != null) {
+                permits.release();
+            }
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (final IOException e) {
+                    Log.e(LOG_TAG, "Error closing stream", e);
+                }
+            }
+        }
+        return null;
+    }
+
+    /*
+     * Marks the forecast cached for the location as just revalidated, for responses OWM answered
+     * with 304 Not Modified
+     */
+    private static ContentProviderOperation buildTouchOperation(String locationSetting) {
+        // Updating through the location's URI lets the provider drop only its cached days
+        Uri locationUri = WeatherEntry.buildWeatherLocation(locationSetting);
+        return ContentProviderOperation.newUpdate(locationUri)
+                .withValue(WeatherEntry.COLUMN_LAST_UPDATED, System.currentTimeMillis())
+                .build();
+    }
+
+    /*
+     * Adds the operations that write the location of the result, if it's new, and each of its
+     * days. Returns the number of days added.
+     */
+    private int addWeatherOperations(Result result, ArrayList<ContentProviderOperation> operations) {
+        ForecastBlock forecast = result.forecast;
+        int dayCount = forecast.getDayCount();
+        if (dayCount == 0) {
+            return 0;
+        }
+
+        long locationId = findLocationId(result.locationSetting);
+        int locationOperationIndex = -1;
+        if (locationId == -1) {
+            // Insert the location in the same batch and point the days at its new row ID
+            String cityName = forecast.getCityName(0);
+            locationOperationIndex = operations.size();
+            operations.add(ContentProviderOperation.newInsert(LocationEntry.CONTENT_URI)
+                    .withValues(buildLocationValues(result.locationSetting,
+                            cityName != null ? cityName : result.locationSetting,
+                            forecast.getLatitude(0), forecast.getLongitude(0)))
+                    .build());
+        }
+
+        for (int i = 0; i < dayCount; i++) {
+            ContentProviderOperation.Builder builder =
+                    ContentProviderOperation.newInsert(WeatherEntry.CONTENT_URI)
+                            .withValues(buildWeatherValues(forecast, i));
+            if (locationOperationIndex != -1) {
+                builder.withValueBackReference(WeatherEntry.COLUMN_LOC_KEY, locationOperationIndex);
+            } else {
+                builder.withValue(WeatherEntry.COLUMN_LOC_KEY, locationId);
+            }
+            operations.add(builder.build());
+        }
+        return dayCount;
+    }
+
+    private static ContentValues buildWeatherValues(ForecastBlock forecast, int day) {
+        ContentValues values = new ContentValues();
+        values.put(WeatherEntry.COLUMN_DATE,
+                WeatherContract.getDateFromEpochDay(forecast.getEpochDay(day)));
+        String description = forecast.getDescription(day);
+        values.put(WeatherEntry.COLUMN_SHORT_DESC,
+                description != null ? description : NO_DESCRIPTION);
+        values.put(WeatherEntry.COLUMN_WEATHER_ID, forecast.getWeatherId(day));
+        values.put(WeatherEntry.COLUMN_MAX_TEMP, forecast.getHigh(day));
+        values.put(WeatherEntry.COLUMN_MIN_TEMP, forecast.getLow(day));
+        values.put(WeatherEntry.COLUMN_HUMIDITY, forecast.getHumidity(day));
+        values.put(WeatherEntry.COLUMN_PRESSURE, forecast.getPressure(day));
+        values.put(WeatherEntry.COLUMN_WIND_SPEED, forecast.getWindSpeed(day));
+        values.put(WeatherEntry.COLUMN_DEGREES, forecast.getWindDirection(day));
+        return values;
+    }
+
+    /*
+     * Writes the results to the WeatherProvider in a single transaction, so new locations, their
+     * days and the revalidated forecasts are committed together or not at all. Results that
+     * another caller claimed first are written by that caller, and this waits until they are.
+     * Returns the number of weather rows written for the results, by whichever caller wrote them,
+     * so once it returns they can be read back from the provider.
+     */
+    public int save(List<Result> results) {
+        List<Result> claimed = new ArrayList<>(results.size());
+        List<Result> claimedElsewhere = new ArrayList<>();
+        int dayCount = 0;
+        for (Result result : results) {
+            if (result.claimSave()) {
+                claimed.add(result);
+                dayCount += result.getDayCount();
+            } else {
+                claimedElsewhere.add(result);
+            }
+        }
+
+        int rowCount = 0;
+        if (!claimed.isEmpty()) {
+            try {
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+                    rowCount = saveBlock(claimed, dayCount);
+                } else {
+                    rowCount = saveOperations(claimed);
+                }
+            } finally {
+                // The whole batch is written or none of it is
+                for (Result result : claimed) {
+                    result.finishSave(rowCount > 0 ? result.getDayCount() : 0);
+                }
+            }
+        }
+
+        // Only wait once our own results are written, so two callers sharing results in a
+        // different order can't end up waiting on each other
+        for (Result result : claimedElsewhere) {
+            try {
+                rowCount += result.awaitSave();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return rowCount;
+    }
+
+    /*
+     * Passes the forecasts to the WeatherProvider as one block of primitive arrays, which it binds
+     * to a compiled INSERT without boxing a value per day
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private int saveBlock(List<Result> results, int dayCount) {
+        ForecastBlock block = new ForecastBlock(results.size(), dayCount);
+        for (Result result : results) {
+            block.addAll(result.forecast);
+        }
+
+        try {
+            Bundle saved = mContext.getContentResolver().call(WeatherContract.BASE_CONTENT_URI,
+                    WeatherContract.METHOD_INSERT_FORECASTS, null, block.toBundle());
+            return saved != null ? saved.getInt(WeatherContract.EXTRA_ROWS_INSERTED) : 0;
+        } catch (SQLiteException | IllegalArgumentException e) {
+            // Thrown by the provider for a write that failed or a block it couldn't read back
+            Log.e(LOG_TAG, "Error saving forecasts: " + e.getMessage(), e);
+            return 0;
+        }
+    }
+
+    /*
+     * ContentResolver.call isn't available before Honeycomb, so older devices write the forecasts
+     * as a batch of operations instead. None of them allow yielding, since a yield commits the
+     * batch so far and the batch has to be written as a whole.
+     */
+    private int saveOperations(List<Result> results) {
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        int rowCount = 0;
+        for (Result result : results) {
+            if (result.notModified) {
+                operations.add(buildTouchOperation(result.locationSetting));
+            } else {
+                rowCount += addWeatherOperations(result, operations);
+            }
+        }
+
+        try {
+            mContext.getContentResolver().applyBatch(WeatherContract.CONTENT_AUTHORITY, operations);
+            return rowCount;
+        } catch (RemoteException | OperationApplicationException e) {
+            Log.e(LOG_TAG, "Error saving forecasts: " + e.getMessage(), e);
+            return 0;
+        }
+    }
+}
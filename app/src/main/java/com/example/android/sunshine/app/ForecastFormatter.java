@@ -0,0 +1,196 @@
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.ForecastBlock;
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Formats forecast days for display as "Day - description - high/low". Everything that doesn't
+ * change from one row to the next is worked out once and shared by every formatter in a Snapshot:
+ * the units the user picked, the locale, and the labels of the days around today. A snapshot is
+ * only rebuilt when the units preference changes, the locale changes or today moves out of its
+ * labels, so formatting a row doesn't read preferences, look up resources or create date formats.
+ *
+ * Each formatter writes into its own StringBuilder, so one formatter must only be used by one
+ * thread at a time. Snapshots are immutable and shared across threads.
+ */
+public class ForecastFormatter {
+    private static final String LOG_TAG = ForecastFormatter.class.getSimpleName();
+
+    private static final String DATE_PATTERN = "EEE MMM dd";
+
+    // Days labelled in a snapshot, starting the day before today. Covers the forecast and the past
+    // day the WeatherRetention keeps for the preferred location.
+    private static final int LABELLED_DAYS = ForecastFetcher.NUM_DAYS * 2;
+
+    /*
+     * Days are stored at midnight UTC, so they're labelled in UTC to keep each one on its own date
+     */
+    private static SimpleDateFormat createDateFormat(Locale locale) {
+        SimpleDateFormat dateFormat = new SimpleDateFormat(DATE_PATTERN, locale);
+        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return dateFormat;
+    }
+
+    /*
+     * What the formatting of a row depends on, read once and then left alone
+     */
+    static final class Snapshot {
+        final boolean imperial;
+        final Locale locale;
+        final long firstLabelledDay;
+        private final String[] dayLabels;
+
+        Snapshot(boolean imperial, Locale locale, long today) {
+            this.imperial = imperial;
+            this.locale = locale;
+            firstLabelledDay = today - 1;
+
+            SimpleDateFormat dateFormat = createDateFormat(locale);
+            dayLabels = new String[LABELLED_DAYS];
+            for (int i = 0; i < LABELLED_DAYS; i++) {
+                dayLabels[i] = dateFormat.format(
+                        WeatherContract.getDateFromEpochDay(firstLabelledDay + i));
+            }
+        }
+
+        /*
+         * Returns the label of the epoch day, or null if it's outside of the labelled days
+         */
+        String getDayLabel(long epochDay) {
+            long index = epochDay - firstLabelledDay;
+            return index >= 0 && index < LABELLED_DAYS ? dayLabels[(int) index] : null;
+        }
+
+        boolean isCurrent(Locale locale, long today) {
+            return this.locale.equals(locale) && getDayLabel(today) != null &&
+                    getDayLabel(today + ForecastFetcher.NUM_DAYS - 1) != null;
+        }
+    }
+
+    // Dropped whenever the units preference changes, and rebuilt on the next use
+    private static volatile Snapshot snapshot;
+
+    // Held here since SharedPreferences only keeps weak references to its listeners
+    private static SharedPreferences.OnSharedPreferenceChangeListener unitsListener;
+
+    private final Context mContext;
+    private final StringBuilder builder = new StringBuilder();
+    // For the rare day outside the labels of the snapshot
+    private SimpleDateFormat fallbackDateFormat;
+    private Locale fallbackLocale;
+
+    public ForecastFormatter(Context context) {
+        mContext = context.getApplicationContext() != null
+                ? context.getApplicationContext()
+                : context;
+        registerUnitsListener(mContext);
+    }
+
+    private static synchronized void registerUnitsListener(final Context context) {
+        if (unitsListener != null) {
+            return;
+        }
+        final String unitsKey = context.getString(R.string.pref_units_key);
+        unitsListener = new SharedPreferences.OnSharedPreferenceChangeListener() {
+            @Override
+            public void onSharedPreferenceChanged(SharedPreferences preferences, String key) {
+                if (unitsKey.equals(key)) {
+                    snapshot = null;
+                }
+            }
+        };
+        PreferenceManager.getDefaultSharedPreferences(context)
+                .registerOnSharedPreferenceChangeListener(unitsListener);
+    }
+
+    /*
+     * Returns the current snapshot, rebuilding it if anything it depends on changed
+     */
+    Snapshot getSnapshot() {
+        Snapshot current = snapshot;
+        Locale locale = Locale.getDefault();
+        long today = WeatherContract.getEpochDay(System.currentTimeMillis());
+        if (current != null && current.isCurrent(locale, today)) {
+            return current;
+        }
+
+        // Check what units the user has specified
+        String units = PreferenceManager.getDefaultSharedPreferences(mContext)
+                .getString(mContext.getString(R.string.pref_units_key),
+                        mContext.getString(R.string.pref_units_default));
+        boolean imperial = units.equals(mContext.getString(R.string.pref_units_imperial));
+        if (!imperial && !units.equals(mContext.getString(R.string.pref_units_default))) {
+            Log.d(LOG_TAG, "Unit type not found: " + units);
+        }
+
+        current = new Snapshot(imperial, locale, today);
+        snapshot = current;
+        return current;
+    }
+
+    /*
+     * Converts temperature units from default metric to imperial units.
+     * Preserves all the data being metric when stored into database
+     */
+    private static double metricToImperial(double temperature) {
+        return (temperature * 1.8) + 32;
+    }
+
+    private void appendDayLabel(Snapshot snapshot, long epochDay) {
+        String label = snapshot.getDayLabel(epochDay);
+        if (label == null) {
+            if (fallbackDateFormat == null || !snapshot.locale.equals(fallbackLocale)) {
+                fallbackDateFormat = createDateFormat(snapshot.locale);
+                fallbackLocale = snapshot.locale;
+            }
+            label = fallbackDateFormat.format(WeatherContract.getDateFromEpochDay(epochDay));
+        }
+        builder.append(label);
+    }
+
+    private void appendHighLow(Snapshot snapshot, double high, double low) {
+        // If units selected is imperial, then convert to imperial units prior to converting to
+        // string
+        if (snapshot.imperial) {
+            high = metricToImperial(high);
+            low = metricToImperial(low);
+        }
+
+        // User probably doesn't care about fractions of a degree.
+        builder.append(Math.round(high)).append('/').append(Math.round(low));
+    }
+
+    /*
+     * Returns the high and low of a day as "high/low", in the units the user picked
+     */
+    public String formatHighLows(double high, double low) {
+        builder.setLength(0);
+        appendHighLow(getSnapshot(), high, low);
+        return builder.toString();
+    }
+
+    /*
+     * Formats every day of the forecast block as "Day - description - high/low"
+     */
+    public String[] formatDays(ForecastBlock forecast) {
+        Snapshot current = getSnapshot();
+        String[] days = new String[forecast.getDayCount()];
+        for (int day = 0; day < days.length; day++) {
+            builder.setLength(0);
+            appendDayLabel(current, forecast.getEpochDay(day));
+            builder.append(" - ").append(forecast.getDescription(day)).append(" - ");
+            appendHighLow(current, forecast.getHigh(day), forecast.getLow(day));
+            days[day] = builder.toString();
+        }
+        return days;
+    }
+}
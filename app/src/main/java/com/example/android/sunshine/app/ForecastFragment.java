@@ -42,8 +42,8 @@ public class ForecastFragment extends Fragment {
     public boolean onOptionsItemSelected(MenuItem item) {
         int id = item.getItemId();
         if (id == R.id.action_refresh) {
-            // Temporary debug button to test FetchWeatherTask
-            updateWeather();
+            // The user explicitly asked for new data, so skip the freshness check
+            updateWeather(true);
 
             return true;
         }
@@ -55,15 +55,19 @@ public class ForecastFragment extends Fragment {
     @Override
     public void onStart() {
         super.onStart();
-        updateWeather();
+        // Shows the cached forecast and only goes to the network if it's stale
+        updateWeather(false);
     }
 
-    private void updateWeather() {
+    private void updateWeather(boolean forceRefresh) {
         SharedPreferences pref = PreferenceManager.getDefaultSharedPreferences(getActivity());
         // If no user location is set, then retrieve the default zip code defined as "90028"
         String location = pref.getString(getString(R.string.pref_location_key),
                 getString(R.string.pref_location_default));
-        new FetchWeatherTask(getActivity(), forecastAdapter).execute(location);
+        // The user is looking at this forecast, so it goes on the user-initiated lane. A refresh
+        // also prefetches the other locations viewed before, in the background.
+        FetchScheduler.execute(new FetchWeatherTask(getActivity(), forecastAdapter, forceRefresh),
+                FetchScheduler.USER_INITIATED, location);
     }
 
     @Override
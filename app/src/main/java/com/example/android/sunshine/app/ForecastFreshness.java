@@ -0,0 +1,61 @@
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.preference.PreferenceManager;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherDao;
+
+/**
+ * Decides whether the forecast cached in the WeatherProvider for a location is still good enough
+ * to show without going to the network. A forecast is stale once it no longer covers today or once
+ * it hasn't been written or revalidated within the refresh interval the user picked in settings.
+ */
+public class ForecastFreshness {
+    private static final long MILLIS_PER_MINUTE = 60 * 1000;
+
+    /*
+     * Returns the refresh interval from the user's preferences in milliseconds
+     */
+    public static long getTimeToLive(Context context) {
+        String refreshMinutes = PreferenceManager.getDefaultSharedPreferences(context)
+                .getString(context.getString(R.string.pref_refresh_key),
+                        context.getString(R.string.pref_refresh_default));
+        try {
+            return Long.parseLong(refreshMinutes) * MILLIS_PER_MINUTE;
+        } catch (NumberFormatException e) {
+            return Long.parseLong(context.getString(R.string.pref_refresh_default))
+                    * MILLIS_PER_MINUTE;
+        }
+    }
+
+    /*
+     * Returns true if there is any forecast from today onwards cached for the location
+     */
+    public static boolean hasForecast(Context context, String locationSetting) {
+        WeatherDao.Freshness freshness = new WeatherDao.Freshness();
+        return new WeatherDao(context).readFreshness(locationSetting, freshness) &&
+                freshness.hasForecast() &&
+                freshness.newestDate >= WeatherContract.normalizeDate(System.currentTimeMillis());
+    }
+
+    /*
+     * Returns true if the forecast for the location has to be fetched from OWM
+     */
+    public static boolean isStale(Context context, String locationSetting) {
+        WeatherDao.Freshness freshness = new WeatherDao.Freshness();
+        if (!new WeatherDao(context).readFreshness(locationSetting, freshness) ||
+                !freshness.hasForecast()) {
+            // Nothing cached for this location
+            return true;
+        }
+
+        long now = System.currentTimeMillis();
+        if (freshness.newestDate < WeatherContract.normalizeDate(now)) {
+            // Every day that was cached has already passed
+            return true;
+        }
+
+        return now - freshness.lastUpdated > getTimeToLive(context);
+    }
+}
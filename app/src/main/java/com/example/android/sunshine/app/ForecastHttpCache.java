@@ -0,0 +1,177 @@
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+
+/**
+ * On-disk cache of the validators of forecast responses keyed by the request URL. Each entry keeps
+ * the ETag and Last-Modified headers OWM sent so the next request for the same URL can be made
+ * conditional. The forecast itself lives in the weather table, so when OWM answers 304 Not
+ * Modified there is nothing to download or parse.
+ */
+public class ForecastHttpCache {
+    private static final String LOG_TAG = ForecastHttpCache.class.getSimpleName();
+
+    // Sub-directory of the app's cache directory that holds the entries
+    private static final String CACHE_DIRECTORY = "forecast";
+
+    // Temporary files need a prefix of at least three characters, which a short entry name isn't
+    private static final String TEMP_FILE_PREFIX = "put-";
+
+    // Header names used for conditional requests
+    private static final String HEADER_ETAG = "ETag";
+    private static final String HEADER_LAST_MODIFIED = "Last-Modified";
+    private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+    private static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+
+    private final File cacheDir;
+
+    /*
+     * The validators of a single cached response
+     */
+    public static class Entry {
+        public final String eTag;
+        public final String lastModified;
+
+        Entry(String eTag, String lastModified) {
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+        }
+    }
+
+    public ForecastHttpCache(Context context) {
+        cacheDir = new File(context.getCacheDir(), CACHE_DIRECTORY);
+    }
+
+    /*
+     * Adds the validators of a cached entry to the request so OWM can answer with a 304 if the
+     * forecast hasn't changed. Must be called before the connection is opened.
+     */
+    public static void addConditionalHeaders(HttpURLConnection urlConnection, Entry entry) {
+        if (entry == null) {
+            return;
+        }
+        if (entry.eTag != null) {
+            urlConnection.setRequestProperty(HEADER_IF_NONE_MATCH, entry.eTag);
+        }
+        if (entry.lastModified != null) {
+            urlConnection.setRequestProperty(HEADER_IF_MODIFIED_SINCE, entry.lastModified);
+        }
+    }
+
+    /*
+     * Returns the cached entry for the URL or null if nothing has been cached for it
+     */
+    public Entry get(String url) {
+        File file = getFile(url);
+        if (!file.exists()) {
+            return null;
+        }
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+
+            // The file name is only a hash of the URL, so make sure it's the right one
+            if (!url.equals(in.readUTF())) {
+                return null;
+            }
+
+            String eTag = readNullableString(in);
+            String lastModified = readNullableString(in);
+
+            return new Entry(eTag, lastModified);
+        } catch (IOException e) {
+            // Corrupt or partially written entry. Treat it as a miss.
+            Log.e(LOG_TAG, "Error reading cached forecast", e);
+            file.delete();
+            return null;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (final IOException e) {
+                    Log.e(LOG_TAG, "Error closing stream", e);
+                }
+            }
+        }
+    }
+
+    /*
+     * Stores the validators of the response. Responses without any validators can never be
+     * answered with a 304, so there's no reason to keep them.
+     */
+    public void put(String url, HttpURLConnection urlConnection) {
+        String eTag = urlConnection.getHeaderField(HEADER_ETAG);
+        String lastModified = urlConnection.getHeaderField(HEADER_LAST_MODIFIED);
+        if (eTag == null && lastModified == null) {
+            return;
+        }
+
+        if (!cacheDir.exists() && !cacheDir.mkdirs()) {
+            Log.e(LOG_TAG, "Unable to create cache directory " + cacheDir);
+            return;
+        }
+
+        // Write to a temporary file first so a reader never sees a half written entry. Each put
+        // gets a file of its own, so concurrent puts for the same URL don't write over each other
+        // and the last one to be renamed wins.
+        File file = getFile(url);
+        File tempFile = null;
+
+        DataOutputStream out = null;
+        try {
+            tempFile = File.createTempFile(TEMP_FILE_PREFIX + file.getName(), ".tmp", cacheDir);
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            out.writeUTF(url);
+            writeNullableString(out, eTag);
+            writeNullableString(out, lastModified);
+            out.close();
+            out = null;
+
+            if (!tempFile.renameTo(file)) {
+                Log.e(LOG_TAG, "Unable to commit cached forecast for " + url);
+                tempFile.delete();
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error writing cached forecast", e);
+            if (tempFile != null) {
+                tempFile.delete();
+            }
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (final IOException e) {
+                    Log.e(LOG_TAG, "Error closing stream", e);
+                }
+            }
+        }
+    }
+
+    private File getFile(String url) {
+        return new File(cacheDir, Integer.toHexString(url.hashCode()));
+    }
+
+    private static String readNullableString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeNullableString(DataOutputStream out, String value)
+            throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package com.example.android.sunshine.app;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Token-level parser for the OpenWeatherMap forecast response. Instead of reading the whole
+ * response into a String and building a JSONObject tree out of it, the parser walks the stream one
+ * token at a time and only keeps the values that are actually used. The location and each day are
+ * handed off to the Callback as soon as their objects close, so memory does not grow with the size
+ * of the response.
+ */
+@TargetApi(Build.VERSION_CODES.HONEYCOMB)
+public class ForecastJsonParser {
+    // These are the names of the JSON objects that need to be extracted.
+    // Location information
+    private static final String OWM_CITY = "city";
+    private static final String OWM_CITY_NAME = "name";
+    private static final String OWM_COORD = "coord";
+    private static final String OWM_LATITUDE = "lat";
+    private static final String OWM_LONGITUDE = "lon";
+    private static final String OWM_TIMEZONE = "timezone";
+
+    // Weather information
+    private static final String OWM_LIST = "list";
+    private static final String OWM_TIME = "dt";
+    private static final String OWM_WEATHER = "weather";
+    private static final String OWM_TEMPERATURE = "main";
+    private static final String OWM_MAX = "temp_max";
+    private static final String OWM_MIN = "temp_min";
+    private static final String OWM_HUMIDITY = "humidity";
+    private static final String OWM_PRESSURE = "pressure";
+    private static final String OWM_WIND = "wind";
+    private static final String OWM_WIND_SPEED = "speed";
+    private static final String OWM_WIND_DIRECTION = "deg";
+    private static final String OWM_DESCRIPTION = "main";
+    private static final String OWM_WEATHER_ID = "id";
+
+    // Passed to onCity when the response doesn't say what the UTC offset of the location is
+    public static final int UNKNOWN_OFFSET = Integer.MIN_VALUE;
+
+    /*
+     * Values of a single day of the forecast. The same instance is reused for every day, so the
+     * Callback must copy out anything it wants to keep.
+     */
+    public static class Day {
+        // Time of the forecast in seconds since the epoch, or 0 if the response didn't have one
+        public long time;
+        public double high;
+        public double low;
+        public double humidity;
+        public double pressure;
+        public double windSpeed;
+        public double windDirection;
+        public int weatherId;
+        public String description;
+
+        void clear() {
+            time = 0;
+            high = 0;
+            low = 0;
+            humidity = 0;
+            pressure = 0;
+            windSpeed = 0;
+            windDirection = 0;
+            weatherId = 0;
+            description = null;
+        }
+    }
+
+    /*
+     * Receives the location and each day of the forecast as they are read off the stream
+     */
+    public interface Callback {
+        /*
+         * utcOffsetSeconds is how far ahead of UTC the location is, or UNKNOWN_OFFSET
+         */
+        void onCity(String cityName, double latitude, double longitude, int utcOffsetSeconds);
+
+        void onDay(int dayIndex, Day day);
+    }
+
+    /*
+     * Reads the forecast from the reader and passes up to maxDays days to the callback. Returns
+     * the number of days that were passed to the callback.
+     */
+    public static int parse(Reader in, int maxDays, Callback callback) throws IOException {
+        JsonReader reader = new JsonReader(in);
+        int dayCount = 0;
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (OWM_LIST.equals(name)) {
+                    dayCount = readList(reader, maxDays, callback);
+                } else if (OWM_CITY.equals(name)) {
+                    readCity(reader, callback);
+                } else {
+                    // Anything outside of the city and list is not used
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } finally {
+            reader.close();
+        }
+        return dayCount;
+    }
+
+    private static void readCity(JsonReader reader, Callback callback) throws IOException {
+        String cityName = null;
+        double latitude = 0;
+        double longitude = 0;
+        int utcOffsetSeconds = UNKNOWN_OFFSET;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (OWM_CITY_NAME.equals(name)) {
+                cityName = reader.nextString();
+            } else if (OWM_COORD.equals(name)) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String coordName = reader.nextName();
+                    if (OWM_LATITUDE.equals(coordName)) {
+                        latitude = reader.nextDouble();
+                    } else if (OWM_LONGITUDE.equals(coordName)) {
+                        longitude = reader.nextDouble();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else if (OWM_TIMEZONE.equals(name) && reader.peek() == JsonToken.NUMBER) {
+                utcOffsetSeconds = reader.nextInt();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        callback.onCity(cityName, latitude, longitude, utcOffsetSeconds);
+    }
+
+    /*
+     * Reads the array of days, skipping over any days past maxDays without decoding them
+     */
+    private static int readList(JsonReader reader, int maxDays, Callback callback)
+            throws IOException {
+        Day day = new Day();
+        int dayIndex = 0;
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (dayIndex < maxDays) {
+                day.clear();
+                readDay(reader, day);
+                callback.onDay(dayIndex, day);
+                dayIndex++;
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endArray();
+        return dayIndex;
+    }
+
+    private static void readDay(JsonReader reader, Day day) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (OWM_TIME.equals(name)) {
+                day.time = reader.nextLong();
+            } else if (OWM_TEMPERATURE.equals(name)) {
+                // Get the min/max temperature, humidity and pressure of the day
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String temperatureName = reader.nextName();
+                    if (OWM_MAX.equals(temperatureName)) {
+                        day.high = reader.nextDouble();
+                    } else if (OWM_MIN.equals(temperatureName)) {
+                        day.low = reader.nextDouble();
+                    } else if (OWM_HUMIDITY.equals(temperatureName)) {
+                        day.humidity = reader.nextDouble();
+                    } else if (OWM_PRESSURE.equals(temperatureName)) {
+                        day.pressure = reader.nextDouble();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else if (OWM_WIND.equals(name)) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String windName = reader.nextName();
+                    if (OWM_WIND_SPEED.equals(windName)) {
+                        day.windSpeed = reader.nextDouble();
+                    } else if (OWM_WIND_DIRECTION.equals(windName)) {
+                        day.windDirection = reader.nextDouble();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else if (OWM_WEATHER.equals(name)) {
+                // Only the first weather object is used for the description
+                reader.beginArray();
+                if (reader.hasNext()) {
+                    readWeather(reader, day);
+                }
+                while (reader.hasNext()) {
+                    reader.skipValue();
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    private static void readWeather(JsonReader reader, Day day) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (OWM_DESCRIPTION.equals(name) && reader.peek() == JsonToken.STRING) {
+                day.description = reader.nextString();
+            } else if (OWM_WEATHER_ID.equals(name)) {
+                day.weatherId = reader.nextInt();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+}
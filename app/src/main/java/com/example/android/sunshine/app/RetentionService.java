@@ -0,0 +1,44 @@
+package com.example.android.sunshine.app;
+
+import android.app.AlarmManager;
+import android.app.IntentService;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.os.SystemClock;
+
+/**
+ * Runs the WeatherRetention on its own background thread. Scheduled once a day with an inexact
+ * alarm so the system can batch it with other wakeups. Its first run on a database created before
+ * incremental auto-vacuum also does the one-time full VACUUM that converts it, so that never
+ * holds up opening the database.
+ */
+public class RetentionService extends IntentService {
+    private static final String LOG_TAG = RetentionService.class.getSimpleName();
+
+    public RetentionService() {
+        super(LOG_TAG);
+    }
+
+    /*
+     * Schedules the daily run unless it's already scheduled
+     */
+    public static void schedule(Context context) {
+        Intent intent = new Intent(context, RetentionService.class);
+        if (PendingIntent.getService(context, 0, intent, PendingIntent.FLAG_NO_CREATE) != null) {
+            return;
+        }
+
+        PendingIntent pendingIntent = PendingIntent.getService(context, 0, intent, 0);
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        alarmManager.setInexactRepeating(AlarmManager.ELAPSED_REALTIME,
+                SystemClock.elapsedRealtime() + AlarmManager.INTERVAL_DAY,
+                AlarmManager.INTERVAL_DAY,
+                pendingIntent);
+    }
+
+    @Override
+    protected void onHandleIntent(Intent intent) {
+        new WeatherRetention(this, WeatherRetention.Policy.DEFAULT).run();
+    }
+}
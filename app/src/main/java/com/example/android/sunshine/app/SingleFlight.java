@@ -0,0 +1,37 @@
+package com.example.android.sunshine.app;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Collapses concurrent calls for the same key into one. The first caller for a key runs the call
+ * on its own thread; anyone asking for the same key while it's still running waits for it and
+ * gets the very same result instead of starting another call. Once the call finishes the key is
+ * released, so later callers start fresh.
+ */
+public class SingleFlight<V> {
+    private final ConcurrentHashMap<String, FutureTask<V>> inFlight = new ConcurrentHashMap<>();
+
+    /*
+     * Runs the callable unless a call for the key is already in flight, in which case its result
+     * is returned once it's done
+     */
+    public V execute(String key, Callable<V> callable)
+            throws InterruptedException, ExecutionException {
+        FutureTask<V> call = new FutureTask<>(callable);
+        FutureTask<V> runningCall = inFlight.putIfAbsent(key, call);
+        if (runningCall != null) {
+            // Attach to the call that's already running
+            return runningCall.get();
+        }
+
+        try {
+            call.run();
+            return call.get();
+        } finally {
+            inFlight.remove(key, call);
+        }
+    }
+}
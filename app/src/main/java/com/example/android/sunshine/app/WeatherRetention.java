@@ -0,0 +1,138 @@
+package com.example.android.sunshine.app;
+
+import android.annotation.TargetApi;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.os.Build;
+import android.os.Bundle;
+import android.preference.PreferenceManager;
+import android.text.format.DateUtils;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/**
+ * Keeps the weather database from growing without bound on long-lived installs. Each run:
+ *
+ *      Deletes the days that are older than the policy keeps, with a separate limit for the
+ *      location the user has picked and for every other location
+ *      Deletes locations that no longer have any weather and aren't the user's location
+ *      Evicts whole locations, least recently viewed first, while the weather and viewed
+ *      locations are over the size cap
+ *      Returns up to the policy's byte budget of freed pages to the file system
+ *
+ * Runs on the calling thread, so it must not be called from the main thread.
+ */
+public class WeatherRetention {
+    private static final String LOG_TAG = WeatherRetention.class.getSimpleName();
+
+    /*
+     * How much history to keep and how much work a single run may do
+     */
+    public static class Policy {
+        // Days before today kept for the location in the user's settings
+        final int preferredLocationPastDays;
+        // Days before today kept for any other location
+        final int otherLocationPastDays;
+        // Bytes the weather and viewed locations may take up before locations are evicted. The
+        // catalogue of locations that were never viewed doesn't count.
+        final long maxDatabaseBytes;
+        // Bytes of free pages returned to the file system per run at most
+        final long vacuumByteBudget;
+
+        public static final Policy DEFAULT = new Policy(1, 0, 2 * 1024 * 1024, 512 * 1024);
+
+        public Policy(int preferredLocationPastDays, int otherLocationPastDays,
+                      long maxDatabaseBytes, long vacuumByteBudget) {
+            this.preferredLocationPastDays = preferredLocationPastDays;
+            this.otherLocationPastDays = otherLocationPastDays;
+            this.maxDatabaseBytes = maxDatabaseBytes;
+            this.vacuumByteBudget = vacuumByteBudget;
+        }
+    }
+
+    // location_id IN (SELECT _id FROM location WHERE location_setting = ?) AND date < ?
+    private static final String preferredLocationBeforeDateSelection =
+            WeatherEntry.COLUMN_LOC_KEY + " IN (SELECT " + LocationEntry._ID + " FROM " +
+                    LocationEntry.TABLE_NAME + " WHERE " +
+                    LocationEntry.COLUMN_LOCATION_SETTING + " = ?) AND " +
+                    WeatherEntry.COLUMN_DATE + " < ?";
+
+    // location_id NOT IN (SELECT _id FROM location WHERE location_setting = ?) AND date < ?
+    private static final String otherLocationBeforeDateSelection =
+            WeatherEntry.COLUMN_LOC_KEY + " NOT IN (SELECT " + LocationEntry._ID + " FROM " +
+                    LocationEntry.TABLE_NAME + " WHERE " +
+                    LocationEntry.COLUMN_LOCATION_SETTING + " = ?) AND " +
+                    WeatherEntry.COLUMN_DATE + " < ?";
+
+    // Catalogue locations that were never used are kept for resolving zip codes
+    // _id NOT IN (SELECT location_id FROM weather) AND last_access > 0 AND location_setting != ?
+    private static final String orphanedLocationSelection =
+            LocationEntry._ID + " NOT IN (SELECT " + WeatherEntry.COLUMN_LOC_KEY + " FROM " +
+                    WeatherEntry.TABLE_NAME + ") AND " +
+                    LocationEntry.COLUMN_LAST_ACCESS + " > 0 AND " +
+                    LocationEntry.COLUMN_LOCATION_SETTING + " != ?";
+
+    private final Context mContext;
+    private final Policy policy;
+
+    public WeatherRetention(Context context, Policy policy) {
+        mContext = context;
+        this.policy = policy;
+    }
+
+    /*
+     * Returns local midnight of the day the given number of days before today
+     */
+    private static long getStartOfDayBefore(int days) {
+        return WeatherContract.normalizeDate(
+                System.currentTimeMillis() - days * DateUtils.DAY_IN_MILLIS);
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    public void run() {
+        ContentResolver resolver = mContext.getContentResolver();
+        String preferredLocation = PreferenceManager.getDefaultSharedPreferences(mContext)
+                .getString(mContext.getString(R.string.pref_location_key),
+                        mContext.getString(R.string.pref_location_default));
+
+        int daysDeleted = resolver.delete(WeatherEntry.CONTENT_URI,
+                preferredLocationBeforeDateSelection,
+                new String[] {preferredLocation,
+                        Long.toString(getStartOfDayBefore(policy.preferredLocationPastDays))});
+        daysDeleted += resolver.delete(WeatherEntry.CONTENT_URI,
+                otherLocationBeforeDateSelection,
+                new String[] {preferredLocation,
+                        Long.toString(getStartOfDayBefore(policy.otherLocationPastDays))});
+
+        int locationsDeleted = resolver.delete(LocationEntry.CONTENT_URI,
+                orphanedLocationSelection, new String[] {preferredLocation});
+
+        int locationsEvicted = 0;
+        long bytesReclaimed = 0;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            // ContentResolver.call isn't available before Honeycomb, so older devices only delete
+            // by date and reuse the freed pages for new rows
+            Bundle keepLocation = new Bundle();
+            keepLocation.putString(WeatherContract.EXTRA_KEEP_LOCATION, preferredLocation);
+            Bundle evictResult = resolver.call(WeatherContract.BASE_CONTENT_URI,
+                    WeatherContract.METHOD_EVICT, Long.toString(policy.maxDatabaseBytes),
+                    keepLocation);
+            if (evictResult != null) {
+                locationsEvicted = evictResult.getInt(WeatherContract.EXTRA_LOCATIONS_EVICTED);
+            }
+
+            Bundle compactResult = resolver.call(WeatherContract.BASE_CONTENT_URI,
+                    WeatherContract.METHOD_COMPACT, Long.toString(policy.vacuumByteBudget), null);
+            if (compactResult != null) {
+                bytesReclaimed = compactResult.getLong(WeatherContract.EXTRA_BYTES_RECLAIMED);
+            }
+        }
+
+        Log.d(LOG_TAG, "Deleted " + daysDeleted + " days and " + locationsDeleted +
+                " locations, evicted " + locationsEvicted + " locations, reclaimed " +
+                bytesReclaimed + " bytes");
+    }
+}
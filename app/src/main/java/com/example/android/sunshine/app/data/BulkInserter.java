@@ -0,0 +1,134 @@
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.DatabaseUtils;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Inserts many rows into one table using compiled statements. SQLiteDatabase.insert builds the
+ * INSERT SQL out of the ContentValues and compiles it again for every single row. Here each column
+ * layout is compiled once and the values of every row with that layout are bound to it by
+ * position, so a batch of rows costs one compile instead of one per row.
+ *
+ * An inserter is meant to be used for a single batch on a single thread, inside a transaction the
+ * caller holds, and closed once the batch is done.
+ */
+class BulkInserter {
+    private final SQLiteDatabase db;
+    private final String table;
+
+    // Compiled statements by column layout. Rows almost always share one layout, so this rarely
+    // holds more than a single statement.
+    private final Map<String, CompiledInsert> statements = new HashMap<>();
+    private CompiledInsert lastStatement;
+
+    /*
+     * An INSERT compiled for a fixed set of columns in a fixed order
+     */
+    private static class CompiledInsert {
+        final String[] columns;
+        final SQLiteStatement statement;
+
+        CompiledInsert(String[] columns, SQLiteStatement statement) {
+            this.columns = columns;
+            this.statement = statement;
+        }
+
+        /*
+         * Returns true if the row has exactly the columns of this statement
+         */
+        boolean matches(ContentValues values) {
+            if (values.size() != columns.length) {
+                return false;
+            }
+            for (String column : columns) {
+                if (!values.containsKey(column)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    BulkInserter(SQLiteDatabase db, String table) {
+        this.db = db;
+        this.table = table;
+    }
+
+    /*
+     * Inserts the row and returns its row ID, or -1 if it couldn't be inserted, the same way
+     * SQLiteDatabase.insert does
+     */
+    long insert(ContentValues values) {
+        if (values.size() == 0) {
+            // Nothing to insert. SQLite has no syntax for an INSERT without columns.
+            return -1;
+        }
+
+        CompiledInsert insert = getStatement(values);
+        SQLiteStatement statement = insert.statement;
+
+        // Bind the values in the order of the columns the statement was compiled with
+        statement.clearBindings();
+        String[] columns = insert.columns;
+        for (int i = 0; i < columns.length; i++) {
+            DatabaseUtils.bindObjectToProgram(statement, i + 1, values.get(columns[i]));
+        }
+
+        try {
+            return statement.executeInsert();
+        } catch (SQLException e) {
+            // A constraint failed for this row only, so let the rest of the batch go through
+            return -1;
+        }
+    }
+
+    private CompiledInsert getStatement(ContentValues values) {
+        // Check the layout of the previous row first so the common case does no work at all
+        if (lastStatement != null && lastStatement.matches(values)) {
+            return lastStatement;
+        }
+
+        String[] columns = values.keySet().toArray(new String[values.size()]);
+        Arrays.sort(columns);
+        String layout = Arrays.toString(columns);
+
+        CompiledInsert insert = statements.get(layout);
+        if (insert == null) {
+            insert = new CompiledInsert(columns, db.compileStatement(buildInsertSql(columns)));
+            statements.put(layout, insert);
+        }
+        lastStatement = insert;
+        return insert;
+    }
+
+    private String buildInsertSql(String[] columns) {
+        // INSERT INTO table (column1, column2, ...) VALUES (?, ?, ...)
+        StringBuilder sql = new StringBuilder("INSERT INTO ").append(table).append(" (");
+        for (int i = 0; i < columns.length; i++) {
+            sql.append(i > 0 ? ", " : "").append(columns[i]);
+        }
+        sql.append(") VALUES (");
+        for (int i = 0; i < columns.length; i++) {
+            sql.append(i > 0 ? ", ?" : "?");
+        }
+        return sql.append(")").toString();
+    }
+
+    /*
+     * Releases the compiled statements
+     */
+    void close() {
+        for (CompiledInsert insert : statements.values()) {
+            insert.statement.close();
+        }
+        statements.clear();
+        lastStatement = null;
+    }
+}
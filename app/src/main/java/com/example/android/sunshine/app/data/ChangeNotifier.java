@@ -0,0 +1,173 @@
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Batches the change notifications of the WeatherProvider so a burst of writes ends up as one
+ * notifyChange per affected URI instead of one per row. Every notification makes the observers
+ * requery, so a caller looping over insert used to set off a full requery for each row.
+ *
+ * Notifications are held back in one of two ways:
+ *
+ *      Inside a write scope opened with beginScope, they are sent when the outermost scope on that
+ *      thread ends, right after the writes it wraps.
+ *
+ *      Outside of a scope, they are collected for windowMillis after the first one and then sent
+ *      together from the main thread.
+ *
+ * URIs are merged before they are sent. A URI is dropped when an ancestor of it is also pending,
+ * since notifying weather already reaches the observers of weather/94043.
+ */
+class ChangeNotifier {
+    private final ContentResolver resolver;
+    private final long windowMillis;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    // Guarded by this
+    private final Set<Uri> pending = new LinkedHashSet<>();
+    private boolean flushScheduled;
+
+    /*
+     * The write scopes open on a thread and the URIs changed inside of them
+     */
+    private static class Scope {
+        int depth;
+        final Set<Uri> uris = new LinkedHashSet<>();
+    }
+
+    private final ThreadLocal<Scope> scopes = new ThreadLocal<Scope>() {
+        @Override
+        protected Scope initialValue() {
+            return new Scope();
+        }
+    };
+
+    private final Runnable flushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    ChangeNotifier(ContentResolver resolver, long windowMillis) {
+        this.resolver = resolver;
+        this.windowMillis = windowMillis;
+    }
+
+    /*
+     * Records that the data behind the URI changed. Observers hear about it once the current
+     * write scope ends or the window closes.
+     */
+    void notifyChange(Uri uri) {
+        Scope scope = scopes.get();
+        if (scope.depth > 0) {
+            scope.uris.add(uri);
+            return;
+        }
+
+        synchronized (this) {
+            pending.add(uri);
+            if (!flushScheduled) {
+                flushScheduled = true;
+                handler.postDelayed(flushRunnable, windowMillis);
+            }
+        }
+    }
+
+    /*
+     * Opens a write scope on the calling thread. Scopes nest, and every call has to be matched by
+     * a call to endScope, usually in a finally block.
+     */
+    void beginScope() {
+        scopes.get().depth++;
+    }
+
+    /*
+     * Closes the innermost write scope. Closing the outermost one sends everything changed inside
+     * of it.
+     */
+    void endScope() {
+        Scope scope = scopes.get();
+        if (scope.depth == 0) {
+            throw new IllegalStateException("endScope called without a matching beginScope");
+        }
+
+        scope.depth--;
+        if (scope.depth == 0 && !scope.uris.isEmpty()) {
+            List<Uri> uris = merge(scope.uris);
+            scope.uris.clear();
+            send(uris);
+        }
+    }
+
+    /*
+     * Sends everything collected outside of a write scope right away
+     */
+    void flush() {
+        List<Uri> uris;
+        synchronized (this) {
+            handler.removeCallbacks(flushRunnable);
+            flushScheduled = false;
+            if (pending.isEmpty()) {
+                return;
+            }
+            uris = merge(pending);
+            pending.clear();
+        }
+        send(uris);
+    }
+
+    private void send(List<Uri> uris) {
+        for (Uri uri : uris) {
+            resolver.notifyChange(uri, null);
+        }
+    }
+
+    /*
+     * Returns the URIs that aren't covered by the notification of another URI in the collection
+     */
+    static List<Uri> merge(Collection<Uri> uris) {
+        List<Uri> merged = new ArrayList<>(uris.size());
+        for (Uri uri : uris) {
+            boolean covered = false;
+            for (Uri other : uris) {
+                if (other != uri && isAncestor(other, uri)) {
+                    covered = true;
+                    break;
+                }
+            }
+            if (!covered) {
+                merged.add(uri);
+            }
+        }
+        return merged;
+    }
+
+    /*
+     * Returns true if descendant sits below ancestor in the path of the same authority
+     */
+    private static boolean isAncestor(Uri ancestor, Uri descendant) {
+        if (!equals(ancestor.getScheme(), descendant.getScheme()) ||
+                !equals(ancestor.getAuthority(), descendant.getAuthority())) {
+            return false;
+        }
+
+        List<String> ancestorPath = ancestor.getPathSegments();
+        List<String> descendantPath = descendant.getPathSegments();
+        return ancestorPath.size() < descendantPath.size() &&
+                descendantPath.subList(0, ancestorPath.size()).equals(ancestorPath);
+    }
+
+    private static boolean equals(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
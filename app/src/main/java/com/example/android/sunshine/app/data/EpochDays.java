@@ -0,0 +1,131 @@
+package com.example.android.sunshine.app.data;
+
+import java.util.SimpleTimeZone;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Turns times into epoch days, the number of days since January 1st 1970, on the calendar of one
+ * time zone. The UTC offset of each day from a year before today to a year after is looked up
+ * once, when the zone is first used, and kept in a table. After that a time is turned into its
+ * local day with plain arithmetic, without allocating a Time or a Calendar.
+ *
+ * Instances are immutable and shared. There is one per time zone, and one per fixed offset for
+ * locations whose time zone is only known as an offset.
+ */
+public class EpochDays {
+    public static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000L;
+
+    private static final long MILLIS_PER_HOUR = 60 * 60 * 1000L;
+
+    // Days before and after the day the table was built that are in the table
+    private static final int TABLE_RADIUS_DAYS = 366;
+
+    // How long the device's time zone is trusted before checking whether it changed, since
+    // TimeZone.getDefault returns a new copy of the zone every time
+    private static final long DEVICE_ZONE_CHECK_MILLIS = 60 * 1000;
+
+    private static final ConcurrentHashMap<String, EpochDays> zones = new ConcurrentHashMap<>();
+
+    private static volatile EpochDays device;
+    private static volatile long deviceCheckedAt;
+
+    private final TimeZone zone;
+    // UTC day of offsets[0]
+    private final long firstDay;
+    // Offset from UTC at the start of each UTC day, in milliseconds. One longer than the table
+    // radius on both sides, so the offset at the end of the last day is known as well.
+    private final int[] offsets;
+
+    private EpochDays(TimeZone zone) {
+        this.zone = zone;
+        firstDay = floorDiv(System.currentTimeMillis(), MILLIS_PER_DAY) - TABLE_RADIUS_DAYS;
+        offsets = new int[TABLE_RADIUS_DAYS * 2 + 2];
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = zone.getOffset((firstDay + i) * MILLIS_PER_DAY);
+        }
+    }
+
+    /*
+     * Returns the days of the time zone
+     */
+    public static EpochDays forZone(TimeZone zone) {
+        EpochDays days = zones.get(zone.getID());
+        if (days == null) {
+            days = new EpochDays(zone);
+            EpochDays raced = zones.putIfAbsent(zone.getID(), days);
+            if (raced != null) {
+                days = raced;
+            }
+        }
+        return days;
+    }
+
+    /*
+     * Returns the days of a zone that's always offsetMillis ahead of UTC
+     */
+    public static EpochDays forOffset(int offsetMillis) {
+        String id = "offset:" + offsetMillis;
+        EpochDays days = zones.get(id);
+        if (days == null) {
+            days = forZone(new SimpleTimeZone(offsetMillis, id));
+        }
+        return days;
+    }
+
+    /*
+     * Returns the days of the solar time zone of the longitude, an hour for every 15 degrees. Used
+     * for locations whose time zone isn't known, where it's close enough to tell the days apart.
+     */
+    public static EpochDays forLongitude(double longitude) {
+        return forOffset((int) (Math.round(longitude / 15) * MILLIS_PER_HOUR));
+    }
+
+    /*
+     * Returns the days of the device's time zone
+     */
+    public static EpochDays forDevice() {
+        long now = System.currentTimeMillis();
+        EpochDays days = device;
+        if (days == null || now - deviceCheckedAt > DEVICE_ZONE_CHECK_MILLIS ||
+                now < deviceCheckedAt) {
+            TimeZone zone = TimeZone.getDefault();
+            if (days == null || !days.zone.getID().equals(zone.getID())) {
+                days = forZone(zone);
+                device = days;
+            }
+            deviceCheckedAt = now;
+        }
+        return days;
+    }
+
+    /*
+     * Divides rounding toward negative infinity, so times before 1970 land on the day they're in
+     */
+    static long floorDiv(long time, long divisor) {
+        long quotient = time / divisor;
+        return time % divisor < 0 ? quotient - 1 : quotient;
+    }
+
+    /*
+     * Returns the offset from UTC at the time, in milliseconds
+     */
+    public int getOffset(long time) {
+        long index = floorDiv(time, MILLIS_PER_DAY) - firstDay;
+        if (index >= 0 && index < offsets.length - 1) {
+            int offset = offsets[(int) index];
+            if (offset == offsets[(int) index + 1]) {
+                return offset;
+            }
+            // The offset changes during this day, so ask the zone for the exact time
+        }
+        return zone.getOffset(time);
+    }
+
+    /*
+     * Returns the local epoch day of the time
+     */
+    public long toEpochDay(long time) {
+        return floorDiv(time + getOffset(time), MILLIS_PER_DAY);
+    }
+}
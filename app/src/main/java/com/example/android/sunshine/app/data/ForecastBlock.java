@@ -0,0 +1,357 @@
+package com.example.android.sunshine.app.data;
+
+import android.os.Bundle;
+
+import java.util.Arrays;
+
+/**
+ * The forecasts of one or more locations held in parallel primitive arrays, one entry per location
+ * and one per day, instead of an object or a ContentValues of boxed values for every day. The
+ * days of a location are stored one after the other, from getFirstDay(location) on. Descriptions
+ * are interned, since OWM only has a handful of them.
+ *
+ * Days are identified by their epoch day, the number of days since January 1st 1970, and stored
+ * in the weather table as the date WeatherContract.getDateFromEpochDay returns for it.
+ *
+ * A block is filled in by one thread and only read once it's handed on. Locations are added with
+ * addLocation, followed by the days of that location.
+ */
+public class ForecastBlock {
+    private static final int DEFAULT_DAY_CAPACITY = 16;
+
+    // Keys of the arrays in the Bundle of toBundle
+    private static final String KEY_LOCATION_SETTINGS = "location_settings";
+    private static final String KEY_CITY_NAMES = "city_names";
+    private static final String KEY_LATITUDES = "latitudes";
+    private static final String KEY_LONGITUDES = "longitudes";
+    private static final String KEY_NOT_MODIFIED = "not_modified";
+    private static final String KEY_DAY_COUNTS = "day_counts";
+    private static final String KEY_EPOCH_DAYS = "epoch_days";
+    private static final String KEY_HIGHS = "highs";
+    private static final String KEY_LOWS = "lows";
+    private static final String KEY_HUMIDITY = "humidity";
+    private static final String KEY_PRESSURE = "pressure";
+    private static final String KEY_WIND_SPEEDS = "wind_speeds";
+    private static final String KEY_WIND_DIRECTIONS = "wind_directions";
+    private static final String KEY_WEATHER_IDS = "weather_ids";
+    private static final String KEY_DESCRIPTIONS = "descriptions";
+
+    // One entry per location
+    private int locationCount;
+    private String[] locationSettings;
+    private String[] cityNames;
+    private double[] latitudes;
+    private double[] longitudes;
+    // Set for locations whose forecast OWM reported as unchanged. They have no days.
+    private boolean[] notModified;
+    private int[] firstDays;
+    private int[] dayCounts;
+
+    // One entry per day
+    private int dayCount;
+    private long[] epochDays;
+    private float[] highs;
+    private float[] lows;
+    private float[] humidity;
+    private float[] pressure;
+    private float[] windSpeeds;
+    private float[] windDirections;
+    private int[] weatherIds;
+    private String[] descriptions;
+
+    public ForecastBlock() {
+        this(1, DEFAULT_DAY_CAPACITY);
+    }
+
+    public ForecastBlock(int locationCapacity, int dayCapacity) {
+        locationCapacity = Math.max(locationCapacity, 1);
+        dayCapacity = Math.max(dayCapacity, 1);
+
+        locationSettings = new String[locationCapacity];
+        cityNames = new String[locationCapacity];
+        latitudes = new double[locationCapacity];
+        longitudes = new double[locationCapacity];
+        notModified = new boolean[locationCapacity];
+        firstDays = new int[locationCapacity];
+        dayCounts = new int[locationCapacity];
+
+        epochDays = new long[dayCapacity];
+        highs = new float[dayCapacity];
+        lows = new float[dayCapacity];
+        humidity = new float[dayCapacity];
+        pressure = new float[dayCapacity];
+        windSpeeds = new float[dayCapacity];
+        windDirections = new float[dayCapacity];
+        weatherIds = new int[dayCapacity];
+        descriptions = new String[dayCapacity];
+    }
+
+    /*
+     * Adds a location. The days added after it belong to it. Returns the index of the location.
+     */
+    public int addLocation(String locationSetting, String cityName, double latitude,
+                           double longitude) {
+        ensureLocationCapacity(locationCount + 1);
+        int location = locationCount++;
+        locationSettings[location] = locationSetting;
+        cityNames[location] = cityName;
+        latitudes[location] = latitude;
+        longitudes[location] = longitude;
+        notModified[location] = false;
+        firstDays[location] = dayCount;
+        dayCounts[location] = 0;
+        return location;
+    }
+
+    /*
+     * Sets the name and coordinates of a location added before they were known
+     */
+    public void setCity(int location, String cityName, double latitude, double longitude) {
+        cityNames[location] = cityName;
+        latitudes[location] = latitude;
+        longitudes[location] = longitude;
+    }
+
+    /*
+     * Adds a location whose stored forecast OWM reported as unchanged
+     */
+    public int addNotModified(String locationSetting) {
+        int location = addLocation(locationSetting, null, 0, 0);
+        notModified[location] = true;
+        return location;
+    }
+
+    /*
+     * Adds a day to the last location that was added
+     */
+    public void addDay(long epochDay, float high, float low, float humidity, float pressure,
+                       float windSpeed, float windDirection, int weatherId, String description) {
+        if (locationCount == 0) {
+            throw new IllegalStateException("Days are added after their location");
+        }
+        ensureDayCapacity(dayCount + 1);
+        int day = dayCount++;
+        epochDays[day] = epochDay;
+        highs[day] = high;
+        lows[day] = low;
+        this.humidity[day] = humidity;
+        this.pressure[day] = pressure;
+        windSpeeds[day] = windSpeed;
+        windDirections[day] = windDirection;
+        weatherIds[day] = weatherId;
+        descriptions[day] = description != null ? description.intern() : null;
+        dayCounts[locationCount - 1]++;
+    }
+
+    /*
+     * Adds every location of the other block and their days
+     */
+    public void addAll(ForecastBlock other) {
+        ensureLocationCapacity(locationCount + other.locationCount);
+        ensureDayCapacity(dayCount + other.dayCount);
+        for (int location = 0; location < other.locationCount; location++) {
+            locationSettings[locationCount] = other.locationSettings[location];
+            cityNames[locationCount] = other.cityNames[location];
+            latitudes[locationCount] = other.latitudes[location];
+            longitudes[locationCount] = other.longitudes[location];
+            notModified[locationCount] = other.notModified[location];
+            firstDays[locationCount] = other.firstDays[location] + dayCount;
+            dayCounts[locationCount] = other.dayCounts[location];
+            locationCount++;
+        }
+
+        int days = other.dayCount;
+        System.arraycopy(other.epochDays, 0, epochDays, dayCount, days);
+        System.arraycopy(other.highs, 0, highs, dayCount, days);
+        System.arraycopy(other.lows, 0, lows, dayCount, days);
+        System.arraycopy(other.humidity, 0, humidity, dayCount, days);
+        System.arraycopy(other.pressure, 0, pressure, dayCount, days);
+        System.arraycopy(other.windSpeeds, 0, windSpeeds, dayCount, days);
+        System.arraycopy(other.windDirections, 0, windDirections, dayCount, days);
+        System.arraycopy(other.weatherIds, 0, weatherIds, dayCount, days);
+        System.arraycopy(other.descriptions, 0, descriptions, dayCount, days);
+        dayCount += days;
+    }
+
+    /*
+     * Removes every location and day, keeping the arrays for reuse
+     */
+    public void clear() {
+        Arrays.fill(locationSettings, 0, locationCount, null);
+        Arrays.fill(cityNames, 0, locationCount, null);
+        Arrays.fill(descriptions, 0, dayCount, null);
+        locationCount = 0;
+        dayCount = 0;
+    }
+
+    private void ensureLocationCapacity(int capacity) {
+        if (capacity <= locationSettings.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, locationSettings.length * 2);
+        locationSettings = Arrays.copyOf(locationSettings, newCapacity);
+        cityNames = Arrays.copyOf(cityNames, newCapacity);
+        latitudes = Arrays.copyOf(latitudes, newCapacity);
+        longitudes = Arrays.copyOf(longitudes, newCapacity);
+        notModified = Arrays.copyOf(notModified, newCapacity);
+        firstDays = Arrays.copyOf(firstDays, newCapacity);
+        dayCounts = Arrays.copyOf(dayCounts, newCapacity);
+    }
+
+    private void ensureDayCapacity(int capacity) {
+        if (capacity <= epochDays.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, epochDays.length * 2);
+        epochDays = Arrays.copyOf(epochDays, newCapacity);
+        highs = Arrays.copyOf(highs, newCapacity);
+        lows = Arrays.copyOf(lows, newCapacity);
+        humidity = Arrays.copyOf(humidity, newCapacity);
+        pressure = Arrays.copyOf(pressure, newCapacity);
+        windSpeeds = Arrays.copyOf(windSpeeds, newCapacity);
+        windDirections = Arrays.copyOf(windDirections, newCapacity);
+        weatherIds = Arrays.copyOf(weatherIds, newCapacity);
+        descriptions = Arrays.copyOf(descriptions, newCapacity);
+    }
+
+    public int getLocationCount() {
+        return locationCount;
+    }
+
+    public String getLocationSetting(int location) {
+        return locationSettings[location];
+    }
+
+    public String getCityName(int location) {
+        return cityNames[location];
+    }
+
+    public double getLatitude(int location) {
+        return latitudes[location];
+    }
+
+    public double getLongitude(int location) {
+        return longitudes[location];
+    }
+
+    public boolean isNotModified(int location) {
+        return notModified[location];
+    }
+
+    /*
+     * Returns the index of the first day of the location
+     */
+    public int getFirstDay(int location) {
+        return firstDays[location];
+    }
+
+    public int getDayCount(int location) {
+        return dayCounts[location];
+    }
+
+    /*
+     * Returns the number of days of every location together
+     */
+    public int getDayCount() {
+        return dayCount;
+    }
+
+    public long getEpochDay(int day) {
+        return epochDays[day];
+    }
+
+    public float getHigh(int day) {
+        return highs[day];
+    }
+
+    public float getLow(int day) {
+        return lows[day];
+    }
+
+    public float getHumidity(int day) {
+        return humidity[day];
+    }
+
+    public float getPressure(int day) {
+        return pressure[day];
+    }
+
+    public float getWindSpeed(int day) {
+        return windSpeeds[day];
+    }
+
+    public float getWindDirection(int day) {
+        return windDirections[day];
+    }
+
+    public int getWeatherId(int day) {
+        return weatherIds[day];
+    }
+
+    public String getDescription(int day) {
+        return descriptions[day];
+    }
+
+    /*
+     * Puts the block in a Bundle as primitive arrays, so it can be passed to the WeatherProvider
+     * without a Parcelable or a boxed value per day
+     */
+    public Bundle toBundle() {
+        Bundle bundle = new Bundle();
+        bundle.putStringArray(KEY_LOCATION_SETTINGS, Arrays.copyOf(locationSettings, locationCount));
+        bundle.putStringArray(KEY_CITY_NAMES, Arrays.copyOf(cityNames, locationCount));
+        bundle.putDoubleArray(KEY_LATITUDES, Arrays.copyOf(latitudes, locationCount));
+        bundle.putDoubleArray(KEY_LONGITUDES, Arrays.copyOf(longitudes, locationCount));
+        bundle.putBooleanArray(KEY_NOT_MODIFIED, Arrays.copyOf(notModified, locationCount));
+        bundle.putIntArray(KEY_DAY_COUNTS, Arrays.copyOf(dayCounts, locationCount));
+
+        bundle.putLongArray(KEY_EPOCH_DAYS, Arrays.copyOf(epochDays, dayCount));
+        bundle.putFloatArray(KEY_HIGHS, Arrays.copyOf(highs, dayCount));
+        bundle.putFloatArray(KEY_LOWS, Arrays.copyOf(lows, dayCount));
+        bundle.putFloatArray(KEY_HUMIDITY, Arrays.copyOf(humidity, dayCount));
+        bundle.putFloatArray(KEY_PRESSURE, Arrays.copyOf(pressure, dayCount));
+        bundle.putFloatArray(KEY_WIND_SPEEDS, Arrays.copyOf(windSpeeds, dayCount));
+        bundle.putFloatArray(KEY_WIND_DIRECTIONS, Arrays.copyOf(windDirections, dayCount));
+        bundle.putIntArray(KEY_WEATHER_IDS, Arrays.copyOf(weatherIds, dayCount));
+        bundle.putStringArray(KEY_DESCRIPTIONS, Arrays.copyOf(descriptions, dayCount));
+        return bundle;
+    }
+
+    /*
+     * Reads a block back out of a Bundle made by toBundle
+     */
+    public static ForecastBlock fromBundle(Bundle bundle) {
+        String[] locationSettings = bundle.getStringArray(KEY_LOCATION_SETTINGS);
+        long[] epochDays = bundle.getLongArray(KEY_EPOCH_DAYS);
+        if (locationSettings == null || epochDays == null) {
+            throw new IllegalArgumentException("Not a forecast block: " + bundle);
+        }
+
+        // The arrays are exactly as long as the block, so they're used as they are
+        ForecastBlock block = new ForecastBlock(0, 0);
+        block.locationCount = locationSettings.length;
+        block.locationSettings = locationSettings;
+        block.cityNames = bundle.getStringArray(KEY_CITY_NAMES);
+        block.latitudes = bundle.getDoubleArray(KEY_LATITUDES);
+        block.longitudes = bundle.getDoubleArray(KEY_LONGITUDES);
+        block.notModified = bundle.getBooleanArray(KEY_NOT_MODIFIED);
+        block.dayCounts = bundle.getIntArray(KEY_DAY_COUNTS);
+        block.firstDays = new int[block.locationCount];
+        for (int location = 1; location < block.locationCount; location++) {
+            block.firstDays[location] = block.firstDays[location - 1] +
+                    block.dayCounts[location - 1];
+        }
+
+        block.dayCount = epochDays.length;
+        block.epochDays = epochDays;
+        block.highs = bundle.getFloatArray(KEY_HIGHS);
+        block.lows = bundle.getFloatArray(KEY_LOWS);
+        block.humidity = bundle.getFloatArray(KEY_HUMIDITY);
+        block.pressure = bundle.getFloatArray(KEY_PRESSURE);
+        block.windSpeeds = bundle.getFloatArray(KEY_WIND_SPEEDS);
+        block.windDirections = bundle.getFloatArray(KEY_WIND_DIRECTIONS);
+        block.weatherIds = bundle.getIntArray(KEY_WEATHER_IDS);
+        block.descriptions = bundle.getStringArray(KEY_DESCRIPTIONS);
+        return block;
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.android.sunshine.app.data;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.SystemClock;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Remembers when the weather of each location was last queried, so the locations nobody looks at
+ * anymore can be evicted first. Reads only update a map in memory. The access times are written to
+ * the location table in one transaction once enough locations have been read or enough time has
+ * passed, so a query never costs a write of its own.
+ *
+ * Writing the access times doesn't notify observers, since nothing shown to the user depends on
+ * them.
+ */
+class LocationAccessTracker {
+    // Distinct locations read before the access times are written
+    private static final int FLUSH_BATCH_SIZE = 16;
+    // Longest the access times are held in memory before being written
+    private static final long FLUSH_INTERVAL_MILLIS = 60 * 1000;
+
+    // UPDATE location SET last_access = MAX(last_access, ?) WHERE location_setting = ?
+    private static final String UPDATE_ACCESS_SQL = "UPDATE " + LocationEntry.TABLE_NAME +
+            " SET " + LocationEntry.COLUMN_LAST_ACCESS + " = MAX(" +
+            LocationEntry.COLUMN_LAST_ACCESS + ", ?) WHERE " +
+            LocationEntry.COLUMN_LOCATION_SETTING + " = ?";
+
+    private final WeatherDbHelper dbHelper;
+
+    // Guarded by this
+    private Map<String, Long> pendingAccess = new HashMap<>();
+    private long lastFlushElapsed = SystemClock.elapsedRealtime();
+
+    LocationAccessTracker(WeatherDbHelper dbHelper) {
+        this.dbHelper = dbHelper;
+    }
+
+    /*
+     * Records that the weather of the location was just read
+     */
+    void recordAccess(String locationSetting) {
+        boolean flushDue;
+        synchronized (this) {
+            pendingAccess.put(locationSetting, System.currentTimeMillis());
+            flushDue = pendingAccess.size() >= FLUSH_BATCH_SIZE ||
+                    SystemClock.elapsedRealtime() - lastFlushElapsed >= FLUSH_INTERVAL_MILLIS;
+        }
+        if (flushDue) {
+            flush();
+        }
+    }
+
+    /*
+     * Writes the access times recorded since the last flush
+     */
+    void flush() {
+        Map<String, Long> accessTimes;
+        synchronized (this) {
+            lastFlushElapsed = SystemClock.elapsedRealtime();
+            if (pendingAccess.isEmpty()) {
+                return;
+            }
+            accessTimes = pendingAccess;
+            pendingAccess = new HashMap<>();
+        }
+
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        WeatherDbHelper.beginWriteTransaction(db);
+        SQLiteStatement statement = db.compileStatement(UPDATE_ACCESS_SQL);
+        try {
+            for (Map.Entry<String, Long> access : accessTimes.entrySet()) {
+                statement.bindLong(1, access.getValue());
+                statement.bindString(2, access.getKey());
+                statement.execute();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            statement.close();
+            db.endTransaction();
+        }
+    }
+}
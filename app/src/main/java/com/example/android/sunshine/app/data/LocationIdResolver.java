@@ -0,0 +1,85 @@
+package com.example.android.sunshine.app.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Turns a location setting into the row ID of its location, so weather queries can look up
+ * weather.location_id directly instead of joining the location table to compare location
+ * settings. A setting is looked up in the location table the first time it's resolved and kept
+ * from then on. Only the settings that are queried are kept, so an imported catalogue of locations
+ * isn't read into memory.
+ *
+ * The WeatherProvider keeps the map consistent: an inserted location is added to it, and any
+ * other change to the location table drops it so settings are looked up again.
+ */
+class LocationIdResolver {
+    private final WeatherDbHelper dbHelper;
+    private final ConcurrentHashMap<String, Long> locationIds = new ConcurrentHashMap<>();
+
+    // Guarded by this. Bumped whenever the map is dropped, so a lookup that started before a
+    // change can't put a stale ID back.
+    private long generation;
+
+    LocationIdResolver(WeatherDbHelper dbHelper) {
+        this.dbHelper = dbHelper;
+    }
+
+    /*
+     * Returns the row ID of the location with the setting, or -1 if there is no such location
+     */
+    long resolve(String locationSetting) {
+        Long locationId = locationIds.get(locationSetting);
+        if (locationId != null) {
+            return locationId;
+        }
+
+        long readGeneration;
+        synchronized (this) {
+            readGeneration = generation;
+        }
+
+        // location_setting is UNIQUE, so this is an index lookup
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        Cursor cursor = db.query(LocationEntry.TABLE_NAME,
+                new String[] {LocationEntry._ID},
+                LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                new String[] {locationSetting},
+                null, null, null);
+        long foundId;
+        try {
+            foundId = cursor.moveToFirst() ? cursor.getLong(0) : -1;
+        } finally {
+            cursor.close();
+        }
+
+        if (foundId != -1) {
+            synchronized (this) {
+                // Unless the location table changed while it was being read
+                if (readGeneration == generation) {
+                    locationIds.put(locationSetting, foundId);
+                }
+            }
+        }
+        return foundId;
+    }
+
+    /*
+     * Adds a location that was just inserted
+     */
+    synchronized void onLocationInserted(String locationSetting, long locationId) {
+        locationIds.put(locationSetting, locationId);
+    }
+
+    /*
+     * Drops the map after locations were updated or deleted
+     */
+    synchronized void invalidate() {
+        generation++;
+        locationIds.clear();
+    }
+}
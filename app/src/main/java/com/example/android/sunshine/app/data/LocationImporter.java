@@ -0,0 +1,197 @@
+package com.example.android.sunshine.app.data;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Streams a catalogue of locations into the location table, so a zip code or city can be resolved
+ * to its name and coordinates without asking the weather API. The catalogue is CSV with one
+ * location per line:
+ *
+ *      location_setting,city_name,coord_lat,coord_long
+ *
+ * Fields may be quoted to hold commas, eg: 20001,"Washington, D.C.",38.91,-77.02. Blank lines and
+ * lines starting with # are skipped, as are lines that can't be read as a location.
+ *
+ * Only the line being read is held in memory, whatever the size of the catalogue. Rows are bound
+ * to one compiled INSERT and committed in batches, so each batch is a single write to the database
+ * and other writers get their turn in between. Locations that are already stored are left as
+ * they are.
+ */
+class LocationImporter {
+    // Rows committed per transaction
+    static final int BATCH_SIZE = 1000;
+
+    private static final int FIELD_COUNT = 4;
+
+    /*
+     * Told about every batch of rows once it is committed
+     */
+    interface ProgressListener {
+        void onProgress(int importedCount, int skippedCount);
+    }
+
+    private final SQLiteDatabase db;
+    private final ProgressListener listener;
+
+    // Reused for every line
+    private final String[] fields = new String[FIELD_COUNT];
+    private final StringBuilder field = new StringBuilder();
+
+    private int importedCount;
+    private int skippedCount;
+
+    LocationImporter(SQLiteDatabase db, ProgressListener listener) {
+        this.db = db;
+        this.listener = listener;
+    }
+
+    /*
+     * Imports every location of the catalogue and returns the number of locations that were new.
+     * Batches committed before an IOException stay imported.
+     */
+    int importCsv(Reader catalogue) throws IOException {
+        BufferedReader reader = catalogue instanceof BufferedReader
+                ? (BufferedReader) catalogue
+                : new BufferedReader(catalogue);
+
+        // Location settings are unique, so a location that's already stored is ignored
+        SQLiteStatement insert = db.compileStatement("INSERT OR IGNORE INTO " +
+                LocationEntry.TABLE_NAME + " (" +
+                LocationEntry.COLUMN_LOCATION_SETTING + ", " +
+                LocationEntry.COLUMN_CITY_NAME + ", " +
+                LocationEntry.COLUMN_COORD_LAT + ", " +
+                LocationEntry.COLUMN_COORD_LONG + ") VALUES (?, ?, ?, ?)");
+        try {
+            boolean done = false;
+            while (!done) {
+                int batchCount = 0;
+                WeatherDbHelper.beginWriteTransaction(db);
+                try {
+                    while (batchCount < BATCH_SIZE) {
+                        String line = reader.readLine();
+                        if (line == null) {
+                            done = true;
+                            break;
+                        }
+                        if (line.length() == 0 || line.charAt(0) == '#') {
+                            continue;
+                        }
+                        if (!bindLine(insert, line)) {
+                            skippedCount++;
+                            continue;
+                        }
+                        if (insert.executeInsert() != -1) {
+                            importedCount++;
+                        }
+                        batchCount++;
+                    }
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+
+                if (listener != null && batchCount > 0) {
+                    listener.onProgress(importedCount, skippedCount);
+                }
+            }
+        } finally {
+            insert.close();
+        }
+        return importedCount;
+    }
+
+    int getSkippedCount() {
+        return skippedCount;
+    }
+
+    /*
+     * Binds the fields of the line to the insert. Returns false if the line isn't a location.
+     */
+    private boolean bindLine(SQLiteStatement insert, String line) {
+        if (splitLine(line) != FIELD_COUNT ||
+                fields[0].length() == 0 || fields[1].length() == 0) {
+            return false;
+        }
+
+        double lat;
+        double lon;
+        try {
+            lat = Double.parseDouble(fields[2]);
+            lon = Double.parseDouble(fields[3]);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        if (lat < -90 || lat > 90 || lon < -180 || lon > 180) {
+            return false;
+        }
+
+        insert.bindString(1, fields[0]);
+        insert.bindString(2, fields[1]);
+        insert.bindDouble(3, lat);
+        insert.bindDouble(4, lon);
+        return true;
+    }
+
+    /*
+     * Splits the line into fields, trimming unquoted ones. Two quotes inside a quoted field stand
+     * for one. Returns the number of fields on the line, which may be more than fits in fields.
+     */
+    private int splitLine(String line) {
+        int count = 0;
+        int i = 0;
+        int length = line.length();
+        while (true) {
+            field.setLength(0);
+            while (i < length && line.charAt(i) == ' ') {
+                i++;
+            }
+
+            if (i < length && line.charAt(i) == '"') {
+                i++;
+                while (i < length) {
+                    char c = line.charAt(i++);
+                    if (c != '"') {
+                        field.append(c);
+                    } else if (i < length && line.charAt(i) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        break;
+                    }
+                }
+                // Skip anything between the closing quote and the comma
+                while (i < length && line.charAt(i) != ',') {
+                    i++;
+                }
+            } else {
+                int start = i;
+                while (i < length && line.charAt(i) != ',') {
+                    i++;
+                }
+                int end = i;
+                while (end > start && line.charAt(end - 1) == ' ') {
+                    end--;
+                }
+                field.append(line, start, end);
+            }
+
+            if (count < FIELD_COUNT) {
+                fields[count] = field.toString();
+            }
+            count++;
+
+            if (i >= length) {
+                return count;
+            }
+            // Step over the comma
+            i++;
+        }
+    }
+}
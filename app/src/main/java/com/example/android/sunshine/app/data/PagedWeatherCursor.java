@@ -0,0 +1,230 @@
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentResolver;
+import android.database.AbstractCursor;
+import android.database.Cursor;
+import android.util.SparseArray;
+
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A cursor over the weather of a location that queries the WeatherProvider one page at a time as
+ * it's moved through, instead of copying every stored day across the provider up front. Each page
+ * is asked for by the date of the last day of the page before it, so a page costs the same however
+ * much history is stored. Only the few pages around the current position are held on to.
+ *
+ * Jumping ahead means loading the pages in between to learn where they end. Pages left behind are
+ * loaded again when moved back to.
+ *
+ * The days are counted once, the first time the count is asked for, by a COUNT(*) over the
+ * (location_id, date) index, so adapters and list views see every day from the start. Days stored
+ * after that are picked up when the cursor is queried again on the change notification.
+ */
+public class PagedWeatherCursor extends AbstractCursor {
+    public static final int DEFAULT_PAGE_SIZE = 50;
+
+    // Pages held on to at most, the current one included
+    private static final int MAX_LOADED_PAGES = 3;
+
+    private final ContentResolver resolver;
+    private final String locationSetting;
+    private final long startDate;
+    private final int pageSize;
+
+    private final String[] columnNames;
+    // The projection asked of the provider, which may have the date added at the end
+    private final String[] queryProjection;
+    private final int dateColumn;
+
+    // Days from startDate on, or -1 until they're counted
+    private int count = -1;
+
+    private final SparseArray<Cursor> pages = new SparseArray<>();
+    // Date of the last day of each page that was ever loaded, by page
+    private final List<Long> lastDates = new ArrayList<>();
+    private Cursor currentPage;
+
+    /*
+     * Pages through the days of the location from startDate on, a date as getDateFromEpochDay
+     * returns it, or from the first day stored if startDate is 0. The projection can't be null,
+     * since the columns have to be known before the first page is loaded.
+     */
+    public PagedWeatherCursor(ContentResolver resolver, String locationSetting, long startDate,
+                              String[] projection, int pageSize) {
+        if (projection == null) {
+            throw new IllegalArgumentException("A paged cursor needs an explicit projection");
+        }
+        this.resolver = resolver;
+        this.locationSetting = locationSetting;
+        this.startDate = startDate;
+        this.pageSize = pageSize;
+        this.columnNames = projection;
+
+        // The date of each page's last day is needed to ask for the next page
+        int date = findDateColumn(projection);
+        if (date == -1) {
+            queryProjection = new String[projection.length + 1];
+            System.arraycopy(projection, 0, queryProjection, 0, projection.length);
+            queryProjection[projection.length] = WeatherEntry.TABLE_NAME + "." +
+                    WeatherEntry.COLUMN_DATE;
+            date = projection.length;
+        } else {
+            queryProjection = projection;
+        }
+        dateColumn = date;
+
+        setNotificationUri(resolver, WeatherEntry.buildWeatherLocation(locationSetting));
+    }
+
+    private static int findDateColumn(String[] projection) {
+        for (int i = 0; i < projection.length; i++) {
+            if (projection[i].equals(WeatherEntry.COLUMN_DATE) ||
+                    projection[i].equals(WeatherEntry.TABLE_NAME + "." + WeatherEntry.COLUMN_DATE)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /*
+     * Returns the page, loading it and every page before it that was never loaded, or null if the
+     * days ran out before it because some were deleted after they were counted
+     */
+    private Cursor getPage(int page) {
+        Cursor cursor = pages.get(page);
+        if (cursor != null) {
+            return cursor;
+        }
+
+        // The page starts after the last day of the page before it
+        long afterDate = 0;
+        if (page > 0) {
+            if (lastDates.size() < page) {
+                getPage(page - 1);
+            }
+            if (lastDates.size() < page) {
+                // The page before it came back empty
+                return null;
+            }
+            afterDate = lastDates.get(page - 1);
+        }
+
+        cursor = resolver.query(
+                WeatherEntry.buildWeatherLocationPage(locationSetting, startDate, afterDate,
+                        pageSize),
+                queryProjection, null, null, null);
+        if (cursor == null) {
+            throw new IllegalStateException("No page " + page + " of the weather of " +
+                    locationSetting);
+        }
+
+        if (lastDates.size() == page && cursor.moveToLast()) {
+            lastDates.add(cursor.getLong(dateColumn));
+        }
+        pages.put(page, cursor);
+        releaseFarthestPage(page);
+        return cursor;
+    }
+
+    /*
+     * Closes the page farthest away from the current one once too many are held on to
+     */
+    private void releaseFarthestPage(int page) {
+        if (pages.size() <= MAX_LOADED_PAGES) {
+            return;
+        }
+
+        int farthest = 0;
+        for (int i = 1; i < pages.size(); i++) {
+            if (Math.abs(pages.keyAt(i) - page) > Math.abs(pages.keyAt(farthest) - page)) {
+                farthest = i;
+            }
+        }
+        pages.valueAt(farthest).close();
+        pages.removeAt(farthest);
+    }
+
+    @Override
+    public boolean onMove(int oldPosition, int newPosition) {
+        currentPage = getPage(newPosition / pageSize);
+        return currentPage != null && currentPage.moveToPosition(newPosition % pageSize);
+    }
+
+    /*
+     * Returns the number of days from startDate on, counting them the first time it's asked for
+     */
+    @Override
+    public int getCount() {
+        if (count == -1) {
+            count = countDays();
+        }
+        return count;
+    }
+
+    private int countDays() {
+        Cursor cursor = resolver.query(
+                WeatherEntry.buildWeatherAggregate(locationSetting, startDate, 0, 0),
+                new String[] {WeatherEntry.COLUMN_DAY_COUNT}, null, null, null);
+        if (cursor == null) {
+            throw new IllegalStateException("Couldn't count the weather of " + locationSetting);
+        }
+        try {
+            return cursor.moveToFirst() ? cursor.getInt(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Override
+    public String[] getColumnNames() {
+        return columnNames;
+    }
+
+    @Override
+    public String getString(int column) {
+        return currentPage.getString(column);
+    }
+
+    @Override
+    public short getShort(int column) {
+        return currentPage.getShort(column);
+    }
+
+    @Override
+    public int getInt(int column) {
+        return currentPage.getInt(column);
+    }
+
+    @Override
+    public long getLong(int column) {
+        return currentPage.getLong(column);
+    }
+
+    @Override
+    public float getFloat(int column) {
+        return currentPage.getFloat(column);
+    }
+
+    @Override
+    public double getDouble(int column) {
+        return currentPage.getDouble(column);
+    }
+
+    @Override
+    public boolean isNull(int column) {
+        return currentPage.isNull(column);
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        for (int i = 0; i < pages.size(); i++) {
+            pages.valueAt(i).close();
+        }
+        pages.clear();
+        currentPage = null;
+    }
+}
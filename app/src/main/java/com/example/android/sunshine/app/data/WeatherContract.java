@@ -4,7 +4,6 @@ import android.content.ContentResolver;
 import android.content.ContentUris;
 import android.net.Uri;
 import android.provider.BaseColumns;
-import android.text.format.Time;
 
 /**
  * Created by hnoct on 10/12/2016.
@@ -24,20 +23,72 @@ public class WeatherContract {
     // location. These will translate to the weather and location tables of our database
     public static final String PATH_WEATHER = "weather";
     public static final String PATH_LOCATION = "location";
+    // Appended to weather/<location> for aggregates over the days of the location
+    public static final String PATH_AGGREGATE = "aggregate";
+    // Appended to location for the locations nearest to a point or inside a bounding box
+    public static final String PATH_NEAREST = "nearest";
+    public static final String PATH_BOUNDING_BOX = "bbox";
+    // Appended to location for the locations whose city name matches what the user typed
+    public static final String PATH_SEARCH = "search";
+
+    // Provider method that reclaims free pages of the database file, with the byte budget as its
+    // argument. The first call on an older database converts it to incremental auto-vacuum with a
+    // full VACUUM instead. The Bundle it returns holds the number of bytes reclaimed.
+    public static final String METHOD_COMPACT = "compact";
+    public static final String EXTRA_BYTES_RECLAIMED = "bytes_reclaimed";
+
+    // Provider method that evicts whole locations, least recently queried first, until the weather
+    // and the locations that have been viewed fit in the number of bytes given as its argument. The
+    // catalogue of locations that were never viewed doesn't count and is never evicted, and neither
+    // is the location given under EXTRA_KEEP_LOCATION. The Bundle it returns holds the number of
+    // locations evicted.
+    public static final String METHOD_EVICT = "evict";
+    public static final String EXTRA_KEEP_LOCATION = "keep_location";
+    public static final String EXTRA_LOCATIONS_EVICTED = "locations_evicted";
+
+    // Provider method that imports the catalogue of locations in the app's assets at the path given
+    // as its argument. Observers of the location URI are notified as batches are committed. The
+    // Bundle it returns holds the number of new locations.
+    public static final String METHOD_IMPORT_LOCATIONS = "import_locations";
+    public static final String EXTRA_LOCATIONS_IMPORTED = "locations_imported";
+
+    // Provider method that writes the forecasts of a ForecastBlock, passed as the Bundle of
+    // ForecastBlock.toBundle, in one transaction. New locations are inserted and unchanged ones
+    // are marked as revalidated. The Bundle it returns holds the number of weather rows written.
+    public static final String METHOD_INSERT_FORECASTS = "insert_forecasts";
+    public static final String EXTRA_ROWS_INSERTED = "rows_inserted";
 
-     /*
-      * Helper method to normalize all dates in the database to the Julian day at UTC
-      */
-    public static long normalizeDate(long startDate) {
-        Time time = new Time();
-        // Set the time to the first day pulled from OWM
-        time.set(startDate);
+    /*
+     * Normalizes a time to the date stored for its day in the weather table: midnight UTC of the
+     * epoch day it falls on in the device's time zone. Only for actual times, like now. A date
+     * that is already stored, or that was worked out with getDateFromEpochDay, names a day of its
+     * own and mustn't be normalized again, since outside of UTC that moves it to another day.
+     * Pure arithmetic on the offsets EpochDays keeps for the zone.
+     */
+    public static long normalizeDate(long time) {
+        return getDateFromEpochDay(getEpochDay(time));
+    }
+
+    /*
+     * Returns the epoch day, the number of days since January 1st 1970, of the local date of the
+     * time
+     */
+    public static long getEpochDay(long date) {
+        return EpochDays.forDevice().toEpochDay(date);
+    }
 
-        // Normalize the dates to UTC instead of GMT
-        int julianDay = Time.getJulianDay(startDate, time.gmtoff);
+    /*
+     * Returns the date stored in the weather table for the epoch day
+     */
+    public static long getDateFromEpochDay(long epochDay) {
+        return epochDay * EpochDays.MILLIS_PER_DAY;
+    }
 
-        // Sets the correct Julian day according to UTC date retrieved above
-        return time.setJulianDay(julianDay);
+    /*
+     * Returns the epoch day of a date stored in the weather table, wherever the location is
+     */
+    public static long getEpochDayFromDate(long date) {
+        return EpochDays.floorDiv(date, EpochDays.MILLIS_PER_DAY);
     }
 
     /*
@@ -68,11 +119,110 @@ public class WeatherContract {
         public static final String COLUMN_COORD_LONG = "coord_long";
         public static final String COLUMN_COORD_LAT = "coord_lat";
 
+        // When the weather of the location was last queried, in milliseconds since the epoch.
+        // Written in batches by the WeatherProvider, so it may lag behind by a minute. Locations
+        // imported from a catalogue and never used since have 0, and are never evicted.
+        public static final String COLUMN_LAST_ACCESS = "last_access";
+
+        // Spatial index over the coordinates of each location, kept in sync with the location
+        // table by triggers. An R-tree where SQLite has the module, a plain index otherwise.
+        public static final String TABLE_SPATIAL_INDEX = "location_rtree";
+        public static final String INDEX_COORD = "location_coord";
+
+        // Query parameters of location/nearest and location/bbox
+        public static final String PARAM_LAT = "lat";
+        public static final String PARAM_LONG = "lon";
+        public static final String PARAM_LIMIT = "limit";
+        public static final String PARAM_MIN_LAT = "min_lat";
+        public static final String PARAM_MAX_LAT = "max_lat";
+        public static final String PARAM_MIN_LONG = "min_lon";
+        public static final String PARAM_MAX_LONG = "max_lon";
+
+        // Added after the requested columns of location/nearest. Squared distance to the point in
+        // degrees of latitude, with longitude scaled to match. Only good for comparing locations.
+        public static final String COLUMN_DISTANCE = "distance";
+
+        // Full-text index over the city names of the locations, kept in sync with the location
+        // table by triggers. Its docid is the row ID of the location.
+        public static final String TABLE_SEARCH_INDEX = "location_search";
+        public static final String COLUMN_SEARCH_NAME = "name";
+
+        // Query parameter of location/search holding the text to match, as typed
+        public static final String PARAM_QUERY = "q";
+
         // TODO: Write something here about this method once we find out what it does exactly
         public static Uri buildLocationUri(long id) {
             return ContentUris.withAppendedId(CONTENT_URI, id);
         }
 
+        /*
+         * Returns the count locations nearest to the point, nearest first
+         */
+        public static Uri buildNearestUri(double lat, double lon, int count) {
+            return CONTENT_URI.buildUpon()
+                    .appendPath(PATH_NEAREST)
+                    .appendQueryParameter(PARAM_LAT, Double.toString(lat))
+                    .appendQueryParameter(PARAM_LONG, Double.toString(lon))
+                    .appendQueryParameter(PARAM_LIMIT, Integer.toString(count))
+                    .build();
+        }
+
+        /*
+         * Returns every location inside the box, edges included
+         */
+        public static Uri buildBoundingBoxUri(double minLat, double maxLat, double minLon,
+                                              double maxLon) {
+            return CONTENT_URI.buildUpon()
+                    .appendPath(PATH_BOUNDING_BOX)
+                    .appendQueryParameter(PARAM_MIN_LAT, Double.toString(minLat))
+                    .appendQueryParameter(PARAM_MAX_LAT, Double.toString(maxLat))
+                    .appendQueryParameter(PARAM_MIN_LONG, Double.toString(minLon))
+                    .appendQueryParameter(PARAM_MAX_LONG, Double.toString(maxLon))
+                    .build();
+        }
+
+        /*
+         * Returns at most limit locations whose city name has a word starting with each word of
+         * the query, best matches first. A limit of 0 returns every match.
+         */
+        public static Uri buildSearchUri(String query, int limit) {
+            Uri.Builder builder = CONTENT_URI.buildUpon()
+                    .appendPath(PATH_SEARCH)
+                    .appendQueryParameter(PARAM_QUERY, query);
+            if (limit > 0) {
+                builder.appendQueryParameter(PARAM_LIMIT, Integer.toString(limit));
+            }
+            return builder.build();
+        }
+
+        /*
+         * Returns the coordinate passed as the query parameter, like PARAM_LAT. Deprecated, since
+         * the WeatherProvider reads every parameter of its URIs in one pass with
+         * WeatherUriRouter.route; only kept for the tests that compare the two.
+         */
+        @Deprecated
+        public static double getCoordinateFromUri(Uri uri, String parameter) {
+            String coordinate = uri.getQueryParameter(parameter);
+            if (coordinate == null || coordinate.length() == 0) {
+                throw new IllegalArgumentException("Missing " + parameter + " in " + uri);
+            }
+            return Double.parseDouble(coordinate);
+        }
+
+        /*
+         * Returns the number of locations asked of location/nearest, 1 if none was passed.
+         * Deprecated in favor of WeatherUriRouter.route.
+         */
+        @Deprecated
+        public static int getLimitFromUri(Uri uri) {
+            String limit = uri.getQueryParameter(PARAM_LIMIT);
+            if (limit != null && limit.length() > 0) {
+                return Integer.parseInt(limit);
+            } else {
+                return 1;
+            }
+        }
+
     };
 
     /*
@@ -91,10 +241,20 @@ public class WeatherContract {
 
         public static final String TABLE_NAME = "weather";
 
+        // Query parameters of a page of weather/<location>. after is the date of the last day of
+        // the previous page and limit the most days the page may hold.
+        public static final String PARAM_AFTER = "after";
+        public static final String PARAM_LIMIT = "limit";
+
+        // Index over location_id and date
+        public static final String INDEX_LOCATION_DATE = "weather_location_date";
+
         // Column with the foreign key to the location table
         public static final String COLUMN_LOC_KEY = "location_id";
         // Date in milliseconds since the epoch <- Udacity's term. Not sure what this means?
         // Perhaps since beginning of Julian Period?
+        // Written and queried as the date of the day, as getDateFromEpochDay returns it. Times
+        // have to go through normalizeDate first, since the provider stores dates as they are.
         public static final String COLUMN_DATE = "date";
         //Weather id from OWM to identify the icon to be used
         public static final String COLUMN_WEATHER_ID = "weather_id";
@@ -121,6 +281,35 @@ public class WeatherContract {
         // Direction of the wind stored in meteorological degrees (e.g. 180° is south)
         public static final String COLUMN_DEGREES = "degrees";
 
+        // Time in milliseconds the row was last written or revalidated against OWM. Used to decide
+        // whether the cached forecast is fresh enough to be shown without going to the network
+        public static final String COLUMN_LAST_UPDATED = "updated";
+
+        // Query parameters of weather/<location>/aggregate. end is the date the range stops
+        // before and bucket the number of days aggregated into each row. The range starts at the
+        // date parameter, like it does for weather/<location>.
+        public static final String PARAM_END = "end";
+        public static final String PARAM_BUCKET_DAYS = "bucket";
+
+        // Columns of an aggregate. Every bucket has the date of its first day stored and the
+        // number of days stored in it, along with the aggregates of AGGREGATE_COLUMNS named by
+        // getAggregateColumn.
+        public static final String COLUMN_BUCKET_START = "bucket_start";
+        public static final String COLUMN_DAY_COUNT = "day_count";
+
+        public static final String FUNCTION_MIN = "min";
+        public static final String FUNCTION_MAX = "max";
+        public static final String FUNCTION_AVG = "avg";
+
+        // Columns that can be aggregated with each of the functions
+        public static final String[] AGGREGATE_COLUMNS = {
+                COLUMN_MIN_TEMP,
+                COLUMN_MAX_TEMP,
+                COLUMN_HUMIDITY,
+                COLUMN_PRESSURE,
+                COLUMN_WIND_SPEED
+        };
+
         // TODO: Write something here about this method once we find out what it does exactly
         public static Uri buildWeatherUri(long id) {
             return ContentUris.withAppendedId(CONTENT_URI, id);
@@ -135,33 +324,84 @@ public class WeatherContract {
 
         /*
          * Returns the weather for all dates beginning from the start date associated with a
-         * location
+         * location. Dates given to this and the other builders are dates of days, as
+         * getDateFromEpochDay or normalizeDate return them, and are passed on as they are.
          */
         public static Uri buildWeatherLocationWithStartDate(
                 String locationSetting, long startDate) {
-            long normalizedDate = normalizeDate(startDate);
             // Query parameter specifies that we want to return multiple times instead of a single
             // date
             return CONTENT_URI.buildUpon()
                     .appendPath(locationSetting)
-                    .appendQueryParameter(COLUMN_DATE, Long.toString(normalizedDate))
+                    .appendQueryParameter(COLUMN_DATE, Long.toString(startDate))
                     .build();
         }
 
+        /*
+         * Returns one page of the weather of a location: at most pageSize days, in date order,
+         * starting after afterDate, which is the date of the last day of the previous page. The
+         * first page is asked for with an afterDate of 0 and starts at startDate, or with the
+         * first day stored if startDate is 0 as well.
+         */
+        public static Uri buildWeatherLocationPage(String locationSetting, long startDate,
+                                                   long afterDate, int pageSize) {
+            Uri.Builder builder = CONTENT_URI.buildUpon().appendPath(locationSetting);
+            if (startDate != 0) {
+                builder.appendQueryParameter(COLUMN_DATE, Long.toString(startDate));
+            }
+            if (afterDate != 0) {
+                builder.appendQueryParameter(PARAM_AFTER, Long.toString(afterDate));
+            }
+            return builder.appendQueryParameter(PARAM_LIMIT, Integer.toString(pageSize)).build();
+        }
+
+        /*
+         * Returns the aggregates of the days of a location from startDate up to, but not including,
+         * endDate, in buckets of bucketDays days each. Any of them may be 0: a range without a
+         * start or an end is open on that side, and without a bucket size all the days of the range
+         * are aggregated into a single row.
+         */
+        public static Uri buildWeatherAggregate(String locationSetting, long startDate,
+                                                long endDate, int bucketDays) {
+            Uri.Builder builder = CONTENT_URI.buildUpon()
+                    .appendPath(locationSetting)
+                    .appendPath(PATH_AGGREGATE);
+            if (startDate != 0) {
+                builder.appendQueryParameter(COLUMN_DATE, Long.toString(startDate));
+            }
+            if (endDate != 0) {
+                builder.appendQueryParameter(PARAM_END, Long.toString(endDate));
+            }
+            if (bucketDays != 0) {
+                builder.appendQueryParameter(PARAM_BUCKET_DAYS, Integer.toString(bucketDays));
+            }
+            return builder.build();
+        }
+
+        /*
+         * Returns the name of the aggregate column holding the function over the column, like
+         * avg_humidity for the average humidity
+         */
+        public static String getAggregateColumn(String function, String column) {
+            return function + "_" + column;
+        }
+
         /*
          * Returns a single weather item for the date and location specified
          */
         public static Uri buildWeatherLocationWithDate(String locationSetting, long date) {
-            long normalizedDate = normalizeDate(date);
             return CONTENT_URI.buildUpon()
                     .appendPath(locationSetting)
-                    .appendPath(Long.toString(normalizedDate))
+                    .appendPath(Long.toString(date))
                     .build();
         }
 
         /*
-         * Returns the location setting from a given URI
+         * Returns the location setting from a given URI. Deprecated, like the other getters below,
+         * since the WeatherProvider reads every parameter of its URIs in one pass with
+         * WeatherUriRouter.route; only kept for the tests that compare the two.
          */
+        @Deprecated
         public static String getLocationSettingFromUri(Uri uri) {
             // Location is always the second segment after the "weather table location" segment
             return uri.getPathSegments().get(1);
@@ -169,18 +409,79 @@ public class WeatherContract {
 
         /*
          * Returns the date specified given a URI pointing to a single item of weather data given
-         * the date and location setting
+         * the date and location setting.
+         * Deprecated in favor of WeatherUriRouter.route.
          */
+        @Deprecated
         public static long getDateFromUri(Uri uri) {
             // Date is always the third segment after the weather table location and the location
             // setting segments
             return Long.parseLong(uri.getPathSegments().get(2));
         }
 
+        /*
+         * Returns the date of the last day of the previous page, or 0 if the URI isn't for a page
+         * past the first.
+         * Deprecated in favor of WeatherUriRouter.route.
+         */
+        @Deprecated
+        public static long getAfterDateFromUri(Uri uri) {
+            String dateString = uri.getQueryParameter(PARAM_AFTER);
+            if (dateString != null && dateString.length() > 0) {
+                return Long.parseLong(dateString);
+            } else {
+                return 0;
+            }
+        }
+
+        /*
+         * Returns the date an aggregate's range stops before, or 0 if the range has no end.
+         * Deprecated in favor of WeatherUriRouter.route.
+         */
+        @Deprecated
+        public static long getEndDateFromUri(Uri uri) {
+            String dateString = uri.getQueryParameter(PARAM_END);
+            if (dateString != null && dateString.length() > 0) {
+                return Long.parseLong(dateString);
+            } else {
+                return 0;
+            }
+        }
+
+        /*
+         * Returns the number of days in each bucket of an aggregate, or 0 for a single bucket.
+         * Deprecated in favor of WeatherUriRouter.route.
+         */
+        @Deprecated
+        public static int getBucketDaysFromUri(Uri uri) {
+            String bucketDays = uri.getQueryParameter(PARAM_BUCKET_DAYS);
+            if (bucketDays != null && bucketDays.length() > 0) {
+                return Integer.parseInt(bucketDays);
+            } else {
+                return 0;
+            }
+        }
+
+        /*
+         * Returns the number of days a page holds at most, or 0 if the URI isn't for a page.
+         * Deprecated in favor of WeatherUriRouter.route.
+         */
+        @Deprecated
+        public static int getPageSizeFromUri(Uri uri) {
+            String pageSize = uri.getQueryParameter(PARAM_LIMIT);
+            if (pageSize != null && pageSize.length() > 0) {
+                return Integer.parseInt(pageSize);
+            } else {
+                return 0;
+            }
+        }
+
         /*
          * Returns the first date passed as a query parameters for a URI that requests the weather
-         * data for multiple dates of a given location
+         * data for multiple dates of a given location.
+         * Deprecated in favor of WeatherUriRouter.route.
          */
+        @Deprecated
         public static long getStartDateFromUri(Uri uri) {
             String dateString = uri.getQueryParameter(COLUMN_DATE);
             if (dateString != null && dateString.length() > 0) {
@@ -0,0 +1,246 @@
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Typed reads of the WeatherProvider for each way the app uses it. Every access pattern has a
+ * Query with a fixed projection, and the index of each column in it is a constant, so rows are
+ * read by position straight into primitive fields instead of looking columns up by name.
+ *
+ * The WeatherProvider recognizes the projections of these queries and skips working out which
+ * tables they need, which it otherwise has to do by scanning the column names of every query.
+ */
+public class WeatherDao {
+    /*
+     * The projection and sort order of one access pattern, with what the provider needs to know
+     * about them worked out ahead of time
+     */
+    static final class Query {
+        final String[] projection;
+        final String sortOrder;
+        // Whether a column comes from the location table, so the query has to join it
+        final boolean needsLocationTable;
+
+        Query(String[] projection, String sortOrder, boolean needsLocationTable) {
+            this.projection = projection;
+            this.sortOrder = sortOrder;
+            this.needsLocationTable = needsLocationTable;
+        }
+    }
+
+    // The days of a location shown in the forecast list, in date order
+    static final Query FORECAST = new Query(new String[] {
+            WeatherEntry.TABLE_NAME + "." + WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_WEATHER_ID
+    }, WeatherEntry.TABLE_NAME + "." + WeatherEntry.COLUMN_DATE + " ASC", false);
+
+    // These indices are tied to FORECAST
+    static final int COL_FORECAST_DATE = 0;
+    static final int COL_FORECAST_DESC = 1;
+    static final int COL_FORECAST_MAX_TEMP = 2;
+    static final int COL_FORECAST_MIN_TEMP = 3;
+    static final int COL_FORECAST_WEATHER_ID = 4;
+
+    // Newest forecast date and most recent write for a location, in a single row
+    static final Query FRESHNESS = new Query(new String[] {
+            "MAX(" + WeatherEntry.TABLE_NAME + "." + WeatherEntry.COLUMN_DATE + ")",
+            "MAX(" + WeatherEntry.TABLE_NAME + "." + WeatherEntry.COLUMN_LAST_UPDATED + ")"
+    }, null, false);
+
+    // These indices are tied to FRESHNESS
+    static final int COL_FRESHNESS_NEWEST_DATE = 0;
+    static final int COL_FRESHNESS_LAST_UPDATED = 1;
+
+    // The row ID of a location
+    static final Query LOCATION_ID = new Query(new String[] {LocationEntry._ID}, null, true);
+
+    // These indices are tied to LOCATION_ID
+    static final int COL_LOCATION_ID = 0;
+
+    // Locations that have been viewed, most recently viewed first
+    static final Query VIEWED_LOCATIONS = new Query(
+            new String[] {LocationEntry.COLUMN_LOCATION_SETTING},
+            LocationEntry.COLUMN_LAST_ACCESS + " DESC", true);
+
+    // These indices are tied to VIEWED_LOCATIONS
+    static final int COL_VIEWED_LOCATION_SETTING = 0;
+
+    // location_setting = ?
+    private static final String LOCATION_SETTING_SELECTION =
+            LocationEntry.COLUMN_LOCATION_SETTING + " = ?";
+
+    // Catalogue locations that were never viewed have no access time
+    // last_access > 0 AND location_setting != ?
+    private static final String VIEWED_LOCATION_SELECTION =
+            LocationEntry.COLUMN_LAST_ACCESS + " > 0 AND " +
+                    LocationEntry.COLUMN_LOCATION_SETTING + " != ?";
+
+    // Every query the provider can recognize by its projection
+    private static final Query[] QUERIES = {FORECAST, FRESHNESS, LOCATION_ID, VIEWED_LOCATIONS};
+
+    /*
+     * How fresh the forecast cached for a location is
+     */
+    public static final class Freshness {
+        // Date of the last day cached, or 0 if nothing is
+        public long newestDate;
+        // Time the forecast was last written or revalidated
+        public long lastUpdated;
+
+        public boolean hasForecast() {
+            return newestDate != 0;
+        }
+    }
+
+    private final ContentResolver resolver;
+
+    public WeatherDao(Context context) {
+        resolver = context.getContentResolver();
+    }
+
+    /*
+     * Returns the query whose projection is this very array, or null if the projection was built
+     * by someone else. Compares references only, so it costs nothing next to reading the names.
+     */
+    static Query findQuery(String[] projection) {
+        for (Query query : QUERIES) {
+            if (query.projection == projection) {
+                return query;
+            }
+        }
+        return null;
+    }
+
+    /*
+     * Reads the days of the location from startEpochDay onwards into a forecast block. The block
+     * has no coordinates, humidity, pressure or wind, since the list doesn't show them.
+     */
+    public ForecastBlock readForecast(String locationSetting, long startEpochDay) {
+        Cursor cursor = resolver.query(
+                WeatherEntry.buildWeatherLocationWithStartDate(locationSetting,
+                        WeatherContract.getDateFromEpochDay(startEpochDay)),
+                FORECAST.projection,
+                null,
+                null,
+                FORECAST.sortOrder
+        );
+
+        if (cursor == null) {
+            return new ForecastBlock();
+        }
+
+        try {
+            ForecastBlock forecast = new ForecastBlock(1, cursor.getCount());
+            forecast.addLocation(locationSetting, null, 0, 0);
+            while (cursor.moveToNext()) {
+                readForecastDay(cursor, forecast);
+            }
+            return forecast;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /*
+     * Appends the current row of a cursor queried with FORECAST to the block
+     */
+    static void readForecastDay(Cursor cursor, ForecastBlock forecast) {
+        forecast.addDay(WeatherContract.getEpochDayFromDate(cursor.getLong(COL_FORECAST_DATE)),
+                cursor.getFloat(COL_FORECAST_MAX_TEMP), cursor.getFloat(COL_FORECAST_MIN_TEMP),
+                0, 0, 0, 0, cursor.getInt(COL_FORECAST_WEATHER_ID),
+                cursor.getString(COL_FORECAST_DESC));
+    }
+
+    /*
+     * Reads how fresh the forecast of the location is into freshness. Returns false if the
+     * provider couldn't be queried.
+     */
+    public boolean readFreshness(String locationSetting, Freshness freshness) {
+        freshness.newestDate = 0;
+        freshness.lastUpdated = 0;
+        Cursor cursor = resolver.query(
+                WeatherEntry.buildWeatherLocation(locationSetting),
+                FRESHNESS.projection,
+                null,
+                null,
+                FRESHNESS.sortOrder
+        );
+
+        if (cursor == null) {
+            return false;
+        }
+
+        try {
+            if (cursor.moveToFirst() && !cursor.isNull(COL_FRESHNESS_NEWEST_DATE)) {
+                freshness.newestDate = cursor.getLong(COL_FRESHNESS_NEWEST_DATE);
+                freshness.lastUpdated = cursor.getLong(COL_FRESHNESS_LAST_UPDATED);
+            }
+            return true;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /*
+     * Returns the row ID of the location, or -1 if it isn't in the database yet
+     */
+    public long findLocationId(String locationSetting) {
+        Cursor cursor = resolver.query(
+                LocationEntry.CONTENT_URI,
+                LOCATION_ID.projection,
+                LOCATION_SETTING_SELECTION,
+                new String[] {locationSetting},
+                LOCATION_ID.sortOrder
+        );
+
+        try {
+            if (cursor != null && cursor.moveToFirst()) {
+                return cursor.getLong(COL_LOCATION_ID);
+            }
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        return -1;
+    }
+
+    /*
+     * Returns up to limit of the locations that have been viewed, most recently viewed first,
+     * leaving out excludedSetting
+     */
+    public List<String> readViewedLocations(String excludedSetting, int limit) {
+        List<String> locationSettings = new ArrayList<>(limit);
+        Cursor cursor = resolver.query(
+                LocationEntry.CONTENT_URI,
+                VIEWED_LOCATIONS.projection,
+                VIEWED_LOCATION_SELECTION,
+                new String[] {excludedSetting},
+                VIEWED_LOCATIONS.sortOrder
+        );
+
+        if (cursor == null) {
+            return locationSettings;
+        }
+
+        try {
+            while (locationSettings.size() < limit && cursor.moveToNext()) {
+                locationSettings.add(cursor.getString(COL_VIEWED_LOCATION_SETTING));
+            }
+            return locationSettings;
+        } finally {
+            cursor.close();
+        }
+    }
+}
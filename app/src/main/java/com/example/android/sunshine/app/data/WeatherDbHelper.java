@@ -1,13 +1,23 @@
 package com.example.android.sunshine.app.data;
 
+import android.annotation.TargetApi;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
 
 import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
 /**
  * Created by hnoct on 10/12/2016.
  *
@@ -17,17 +27,353 @@ import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
 
 public class WeatherDbHelper extends SQLiteOpenHelper {
     // Keeps track of the database version. Needs to be incremented any time the schema is updated
-    private static final int DATABASE_VERSION = 1;
+    static final int DATABASE_VERSION = 7;
 
     // The name of the database file as it will be on the phone's storage
     static final String DATABASE_NAME = "weather.db";
 
+    // Number of pages the write-ahead log may grow to before SQLite checkpoints it back into the
+    // database on commit. This is SQLite's own default.
+    static final int DEFAULT_WAL_AUTOCHECKPOINT_PAGES = 1000;
+
+    // Value of PRAGMA auto_vacuum when free pages are reclaimed by incremental_vacuum
+    private static final long AUTO_VACUUM_INCREMENTAL = 2;
+
+    // Prebuilt database in the app's assets holding a catalogue of locations. Copied in place of an
+    // empty database the first time the database is opened, and migrated like any older database.
+    // Apps that don't ship one start empty. The seed has to be built with
+    // PRAGMA auto_vacuum = INCREMENTAL set before its tables are created, so it never needs the
+    // full VACUUM that converts older databases.
+    static final String SEED_DATABASE_ASSET = "databases/" + DATABASE_NAME;
+
+    private static final int COPY_BUFFER_SIZE = 8192;
+
+    // Rough bytes taken up by a weather row and its entries in the indexes on the table, not
+    // counting its description
+    private static final long WEATHER_ROW_BYTES = 96;
+    // Rough bytes taken up by a location row and its entries in the spatial index, not counting
+    // its text
+    private static final long LOCATION_ROW_BYTES = 64;
+
+    // SELECT COUNT(*) * 96 + IFNULL(SUM(LENGTH(short_desc)), 0) FROM weather
+    private static final String SQL_ESTIMATE_WEATHER_BYTES = "SELECT COUNT(*) * " +
+            WEATHER_ROW_BYTES + " + IFNULL(SUM(LENGTH(" + WeatherEntry.COLUMN_SHORT_DESC +
+            ")), 0) FROM " + WeatherEntry.TABLE_NAME;
+
+    // The city name is stored again in the search index
+    // SELECT COUNT(*) * 64 + IFNULL(SUM(LENGTH(location_setting) + 2 * LENGTH(city_name)), 0)
+    //         FROM location WHERE last_access > 0
+    private static final String SQL_ESTIMATE_VIEWED_LOCATION_BYTES = "SELECT COUNT(*) * " +
+            LOCATION_ROW_BYTES + " + IFNULL(SUM(LENGTH(" + LocationEntry.COLUMN_LOCATION_SETTING +
+            ") + 2 * LENGTH(" + LocationEntry.COLUMN_CITY_NAME + ")), 0) FROM " +
+            LocationEntry.TABLE_NAME + " WHERE " + LocationEntry.COLUMN_LAST_ACCESS + " > 0";
+
+    private final Context context;
+    private boolean seedChecked;
+
+    private int walAutoCheckpointPages = DEFAULT_WAL_AUTOCHECKPOINT_PAGES;
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
     public WeatherDbHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        this.context = context.getApplicationContext() != null
+                ? context.getApplicationContext()
+                : context;
+
+        // With write-ahead logging, writers append to a separate log instead of locking the
+        // database file, so queries keep running on their own pooled connections while a large
+        // bulk insert holds its transaction
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            setWriteAheadLoggingEnabled(true);
+        }
+    }
+
+    @Override
+    public synchronized SQLiteDatabase getWritableDatabase() {
+        installSeedDatabase();
+        return super.getWritableDatabase();
+    }
+
+    @Override
+    public synchronized SQLiteDatabase getReadableDatabase() {
+        installSeedDatabase();
+        return super.getReadableDatabase();
+    }
+
+    /*
+     * Copies the seed database into place if there is no database yet. The copy is written to a
+     * temporary file and renamed, so a copy cut short never looks like a database.
+     */
+    private void installSeedDatabase() {
+        if (seedChecked) {
+            return;
+        }
+        seedChecked = true;
+
+        File database = context.getDatabasePath(DATABASE_NAME);
+        if (database.exists()) {
+            return;
+        }
+
+        InputStream seed;
+        try {
+            seed = context.getAssets().open(SEED_DATABASE_ASSET);
+        } catch (IOException e) {
+            // No seed database shipped
+            return;
+        }
+
+        File copy = new File(database.getPath() + ".seed");
+        try {
+            File directory = database.getParentFile();
+            if (!directory.exists() && !directory.mkdirs()) {
+                throw new IOException("Couldn't create " + directory);
+            }
+
+            OutputStream out = new FileOutputStream(copy);
+            try {
+                byte[] buffer = new byte[COPY_BUFFER_SIZE];
+                int read;
+                while ((read = seed.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+            } finally {
+                out.close();
+            }
+
+            if (!copy.renameTo(database)) {
+                throw new IOException("Couldn't move the seed database to " + database);
+            }
+        } catch (IOException e) {
+            // Start with an empty database instead
+            copy.delete();
+        } finally {
+            try {
+                seed.close();
+            } catch (IOException e) {
+                // Everything was read already
+            }
+        }
+    }
+
+    /*
+     * Sets how many pages the write-ahead log may grow to before it is checkpointed on commit.
+     * Larger values make big ingestions faster at the cost of a bigger log file and slower reads
+     * of recently written pages. Zero or less turns automatic checkpoints off, in which case
+     * checkpoint() has to be called once the writes are done.
+     */
+    public synchronized void setCheckpointPolicy(int autoCheckpointPages) {
+        walAutoCheckpointPages = autoCheckpointPages;
+        applyCheckpointPolicy(getWritableDatabase());
+    }
+
+    private void applyCheckpointPolicy(SQLiteDatabase db) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            // Write-ahead logging is not available, so there's no log to checkpoint
+            return;
+        }
+        // The setting belongs to a connection. Inside a transaction the PRAGMA runs on the
+        // connection that does the writing rather than on one of the pooled readers.
+        db.beginTransaction();
+        try {
+            DatabaseUtils.longForQuery(db, "PRAGMA wal_autocheckpoint = " +
+                    Math.max(walAutoCheckpointPages, 0), null);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /*
+     * Copies whatever is in the write-ahead log back into the database without waiting for
+     * readers. Only needed when automatic checkpoints are turned off.
+     */
+    public void checkpoint() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            return;
+        }
+        // The checkpoint only runs as the statement is stepped
+        DatabaseUtils.longForQuery(getWritableDatabase(), "PRAGMA wal_checkpoint(PASSIVE)", null);
+    }
+
+    /*
+     * Starts a transaction that doesn't keep readers out. Readers on other connections see the
+     * state from before the transaction until it commits.
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    public static void beginWriteTransaction(SQLiteDatabase db) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            db.beginTransactionNonExclusive();
+        } else {
+            db.beginTransaction();
+        }
+    }
+
+    @Override
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB &&
+                Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+            // setWriteAheadLoggingEnabled isn't available yet, so enable it on the open database
+            db.enableWriteAheadLogging();
+        }
+        applyCheckpointPolicy(db);
+    }
+
+    /*
+     * Returns free pages at the end of the database file to the file system, up to byteBudget bytes
+     * worth of them, so a single run never spends long moving pages. Returns the number of bytes
+     * reclaimed.
+     *
+     * Databases created before incremental auto-vacuum was turned on are converted first. The mode
+     * only takes effect after a full VACUUM, which rewrites the whole file and can't run inside a
+     * transaction, so it's left to this background run instead of opening the database. That run
+     * gives back every free page whatever the budget, and happens once per database.
+     */
+    public long incrementalVacuum(long byteBudget) {
+        SQLiteDatabase db = getWritableDatabase();
+        long pageSize = DatabaseUtils.longForQuery(db, "PRAGMA page_size", null);
+        long freePages = DatabaseUtils.longForQuery(db, "PRAGMA freelist_count", null);
+        if (DatabaseUtils.longForQuery(db, "PRAGMA auto_vacuum", null) != AUTO_VACUUM_INCREMENTAL) {
+            db.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+            db.execSQL("VACUUM");
+            return freePages * pageSize;
+        }
+
+        long pages = Math.min(freePages, byteBudget / pageSize);
+        if (pages <= 0) {
+            return 0;
+        }
+
+        // The pages are only freed as the statement is stepped through, so read it to the end
+        Cursor cursor = db.rawQuery("PRAGMA incremental_vacuum(" + pages + ")", null);
+        try {
+            while (cursor.moveToNext()) {
+                // Each step frees one page
+            }
+        } finally {
+            cursor.close();
+        }
+
+        long remainingFreePages = DatabaseUtils.longForQuery(db, "PRAGMA freelist_count", null);
+        return (freePages - remainingFreePages) * pageSize;
+    }
+
+    /*
+     * Returns an estimate of the bytes taken up by data eviction can free: every weather row and
+     * every location that has been viewed. The catalogue of locations that were never viewed and
+     * its share of the indexes are left out, so a catalogue bigger than the retention cap doesn't
+     * make every run evict every location it may.
+     */
+    public long getEvictableBytes() {
+        SQLiteDatabase db = getReadableDatabase();
+        return DatabaseUtils.longForQuery(db, SQL_ESTIMATE_WEATHER_BYTES, null) +
+                DatabaseUtils.longForQuery(db, SQL_ESTIMATE_VIEWED_LOCATION_BYTES, null);
+    }
+
+    // Lets the days of a location be looked up by its row ID in date order. The UNIQUE constraint
+    // of the weather table is indexed by date first, which doesn't help when the location is known.
+    private static final String SQL_CREATE_WEATHER_LOCATION_DATE_INDEX = "CREATE INDEX " +
+            WeatherEntry.INDEX_LOCATION_DATE + " ON " + WeatherEntry.TABLE_NAME + " (" +
+            WeatherEntry.COLUMN_LOC_KEY + ", " + WeatherEntry.COLUMN_DATE + ");";
+
+    /*
+     * Indexes the coordinates of every location so the locations near a point can be found without
+     * scanning the table. SQLite builds without the R-tree module get an index over latitude and
+     * longitude instead, which narrows the latitude and scans the rest. Either way, triggers keep
+     * the index in sync with the location table.
+     */
+    static void createLocationSpatialIndex(SQLiteDatabase db) {
+        try {
+            db.execSQL("CREATE VIRTUAL TABLE " + LocationEntry.TABLE_SPATIAL_INDEX +
+                    " USING rtree(id, min_lat, max_lat, min_lon, max_lon)");
+        } catch (SQLiteException e) {
+            // No R-tree module in this build of SQLite
+            db.execSQL("CREATE INDEX " + LocationEntry.INDEX_COORD + " ON " +
+                    LocationEntry.TABLE_NAME + " (" + LocationEntry.COLUMN_COORD_LAT + ", " +
+                    LocationEntry.COLUMN_COORD_LONG + ")");
+            return;
+        }
+
+        // Each location is a point, a box with no size
+        String insertPoint = "INSERT INTO " + LocationEntry.TABLE_SPATIAL_INDEX + " VALUES (" +
+                "new." + LocationEntry._ID + ", " +
+                "new." + LocationEntry.COLUMN_COORD_LAT + ", " +
+                "new." + LocationEntry.COLUMN_COORD_LAT + ", " +
+                "new." + LocationEntry.COLUMN_COORD_LONG + ", " +
+                "new." + LocationEntry.COLUMN_COORD_LONG + ");";
+        String deletePoint = "DELETE FROM " + LocationEntry.TABLE_SPATIAL_INDEX +
+                " WHERE id = old." + LocationEntry._ID + ";";
+
+        String createTrigger = "CREATE TRIGGER " + LocationEntry.TABLE_SPATIAL_INDEX;
+        db.execSQL(createTrigger + "_insert AFTER INSERT ON " + LocationEntry.TABLE_NAME +
+                " BEGIN " + insertPoint + " END");
+        db.execSQL(createTrigger + "_update AFTER UPDATE OF " + LocationEntry._ID + ", " +
+                LocationEntry.COLUMN_COORD_LAT + ", " + LocationEntry.COLUMN_COORD_LONG + " ON " +
+                LocationEntry.TABLE_NAME + " BEGIN " + deletePoint + " " + insertPoint + " END");
+        db.execSQL(createTrigger + "_delete AFTER DELETE ON " + LocationEntry.TABLE_NAME +
+                " BEGIN " + deletePoint + " END");
+
+        // Index the locations that are already stored
+        db.execSQL("INSERT INTO " + LocationEntry.TABLE_SPATIAL_INDEX + " SELECT " +
+                LocationEntry._ID + ", " +
+                LocationEntry.COLUMN_COORD_LAT + ", " + LocationEntry.COLUMN_COORD_LAT + ", " +
+                LocationEntry.COLUMN_COORD_LONG + ", " + LocationEntry.COLUMN_COORD_LONG +
+                " FROM " + LocationEntry.TABLE_NAME);
+    }
+
+    /*
+     * Returns true if the locations are indexed by an R-tree
+     */
+    static boolean hasLocationRTree(SQLiteDatabase db) {
+        return DatabaseUtils.longForQuery(db, "SELECT COUNT(*) FROM sqlite_master WHERE name = ?",
+                new String[] {LocationEntry.TABLE_SPATIAL_INDEX}) > 0;
+    }
+
+    /*
+     * Indexes the city name of every location in a full-text table whose docid is the location's
+     * row ID, so names can be matched by word prefix without scanning the location table. The
+     * unicode61 tokenizer folds case and accents beyond ASCII. SQLite builds older than 3.7.13 don't
+     * have it and get the simple tokenizer. Triggers keep the index in sync with the location table.
+     */
+    static void createLocationSearchIndex(SQLiteDatabase db) {
+        String createTable = "CREATE VIRTUAL TABLE " + LocationEntry.TABLE_SEARCH_INDEX +
+                " USING fts3(" + LocationEntry.COLUMN_SEARCH_NAME;
+        try {
+            db.execSQL(createTable + ", tokenize=unicode61)");
+        } catch (SQLiteException e) {
+            // No unicode61 tokenizer in this build of SQLite
+            db.execSQL(createTable + ")");
+        }
+
+        String insertName = "INSERT INTO " + LocationEntry.TABLE_SEARCH_INDEX + " (docid, " +
+                LocationEntry.COLUMN_SEARCH_NAME + ") VALUES (new." + LocationEntry._ID + ", " +
+                "new." + LocationEntry.COLUMN_CITY_NAME + ");";
+        String deleteName = "DELETE FROM " + LocationEntry.TABLE_SEARCH_INDEX +
+                " WHERE docid = old." + LocationEntry._ID + ";";
+
+        String createTrigger = "CREATE TRIGGER " + LocationEntry.TABLE_SEARCH_INDEX;
+        db.execSQL(createTrigger + "_insert AFTER INSERT ON " + LocationEntry.TABLE_NAME +
+                " BEGIN " + insertName + " END");
+        db.execSQL(createTrigger + "_update AFTER UPDATE OF " + LocationEntry._ID + ", " +
+                LocationEntry.COLUMN_CITY_NAME + " ON " + LocationEntry.TABLE_NAME +
+                " BEGIN " + deleteName + " " + insertName + " END");
+        db.execSQL(createTrigger + "_delete AFTER DELETE ON " + LocationEntry.TABLE_NAME +
+                " BEGIN " + deleteName + " END");
+
+        // Index the locations that are already stored
+        db.execSQL("INSERT INTO " + LocationEntry.TABLE_SEARCH_INDEX + " (docid, " +
+                LocationEntry.COLUMN_SEARCH_NAME + ") SELECT " + LocationEntry._ID + ", " +
+                LocationEntry.COLUMN_CITY_NAME + " FROM " + LocationEntry.TABLE_NAME);
     }
 
     @Override
     public void onCreate(SQLiteDatabase sqLiteDatabase) {
+        // Lets freed pages be given back to the file system a few at a time. The mode can only be
+        // set on a database without tables, so it has to come first.
+        sqLiteDatabase.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+
         // Create the weather table utilizing the constants from WeatherEntry
         final String SQL_CREATE_WEATHER_TABLE = "CREATE TABLE " + WeatherEntry.TABLE_NAME + " (" +
                 // Auto-increment the primary key of the weather entries as it will be assumed that
@@ -48,6 +394,9 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
                 WeatherEntry.COLUMN_WIND_SPEED + " REAL NOT NULL, " +
                 WeatherEntry.COLUMN_DEGREES + " REAL NOT NULL, " +
 
+                // Stamped by the WeatherProvider on every write
+                WeatherEntry.COLUMN_LAST_UPDATED + " INTEGER NOT NULL DEFAULT 0, " +
+
                 // Set up the location column as foreign key to the location table
                 "FOREIGN KEY (" + WeatherEntry.COLUMN_LOC_KEY + ") REFERENCES " +
                 LocationEntry.TABLE_NAME + "(" + LocationEntry._ID + "), " +
@@ -66,19 +415,21 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
                 LocationEntry.COLUMN_LOCATION_SETTING + " TEXT UNIQUE NOT NULL, " +
                 LocationEntry.COLUMN_CITY_NAME + " TEXT NOT NULL, " +
                 LocationEntry.COLUMN_COORD_LAT + " REAL NOT NULL, " +
-                LocationEntry.COLUMN_COORD_LONG + " REAL NOT NULL);";
+                LocationEntry.COLUMN_COORD_LONG + " REAL NOT NULL, " +
+                // Written in batches from the queries of the WeatherProvider
+                LocationEntry.COLUMN_LAST_ACCESS + " INTEGER NOT NULL DEFAULT 0);";
 
         sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_TABLE);
         sqLiteDatabase.execSQL(SQL_CREATE_LOCATION_TABLE);
+        sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_LOCATION_DATE_INDEX);
+        createLocationSpatialIndex(sqLiteDatabase);
+        createLocationSearchIndex(sqLiteDatabase);
     }
 
     @Override
-    public void onUpgrade(SQLiteDatabase sqLiteDatabase, int i, int i1) {
-        // Since this only caches weather data from online, there is no need to preserve the data
-        // when changing version numbers, so they are merely discarded and tables are created using
-        // the updated schema
-        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
-        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LocationEntry.TABLE_NAME);
-        onCreate(sqLiteDatabase);
+    public void onUpgrade(SQLiteDatabase sqLiteDatabase, int oldVersion, int newVersion) {
+        // Migrate the existing tables in place instead of dropping them, so an upgrade doesn't
+        // throw away every cached forecast and location and force a refetch of all of them
+        WeatherDbMigrations.migrate(sqLiteDatabase, oldVersion, newVersion);
     }
 }
@@ -0,0 +1,206 @@
+package com.example.android.sunshine.app.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/**
+ * Upgrades an existing weather database one version at a time, changing the tables in place so
+ * the cached forecasts and locations survive the upgrade. Each step takes the schema from one
+ * DATABASE_VERSION to the next, so a database that skipped several releases simply runs every
+ * step in between.
+ *
+ * To change the schema, bump DATABASE_VERSION, update onCreate in the WeatherDbHelper and add a
+ * step here that turns the previous version into the new one.
+ */
+class WeatherDbMigrations {
+    // Number of rows copied per statement when a table has to be rebuilt
+    static final int COPY_BATCH_SIZE = 500;
+
+    // The weather table as version 7 creates it, under the name it's rebuilt as
+    private static final String VERSION_7_WEATHER_TABLE = "CREATE TABLE " +
+            WeatherEntry.TABLE_NAME + "_new (" +
+            WeatherEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+            WeatherEntry.COLUMN_LOC_KEY + " INTEGER NOT NULL, " +
+            WeatherEntry.COLUMN_DATE + " INTEGER NOT NULL, " +
+            WeatherEntry.COLUMN_SHORT_DESC + " TEXT NOT NULL, " +
+            WeatherEntry.COLUMN_WEATHER_ID + " INTEGER NOT NULL, " +
+            WeatherEntry.COLUMN_MIN_TEMP + " INTEGER NOT NULL, " +
+            WeatherEntry.COLUMN_MAX_TEMP + " INTEGER NOT NULL, " +
+            WeatherEntry.COLUMN_HUMIDITY + " REAL NOT NULL, " +
+            WeatherEntry.COLUMN_PRESSURE + " REAL NOT NULL, " +
+            WeatherEntry.COLUMN_WIND_SPEED + " REAL NOT NULL, " +
+            WeatherEntry.COLUMN_DEGREES + " REAL NOT NULL, " +
+            WeatherEntry.COLUMN_LAST_UPDATED + " INTEGER NOT NULL DEFAULT 0, " +
+            "FOREIGN KEY (" + WeatherEntry.COLUMN_LOC_KEY + ") REFERENCES " +
+            LocationEntry.TABLE_NAME + "(" + LocationEntry._ID + "), " +
+            "UNIQUE (" + WeatherEntry.COLUMN_DATE + ", " +
+            WeatherEntry.COLUMN_LOC_KEY + ") ON CONFLICT REPLACE);";
+
+    // Every column of the weather table other than its date
+    private static final String[] WEATHER_COLUMNS_BUT_DATE = {
+            WeatherEntry._ID,
+            WeatherEntry.COLUMN_LOC_KEY,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_HUMIDITY,
+            WeatherEntry.COLUMN_PRESSURE,
+            WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherEntry.COLUMN_DEGREES,
+            WeatherEntry.COLUMN_LAST_UPDATED
+    };
+
+    // Temporary table of each stored date and the date it moves to
+    private static final String DATE_MAP_TABLE = "weather_dates";
+
+    /*
+     * Runs every step needed to bring the database from oldVersion up to newVersion
+     */
+    static void migrate(SQLiteDatabase db, int oldVersion, int newVersion) {
+        for (int version = oldVersion; version < newVersion; version++) {
+            migrateFrom(db, version);
+        }
+    }
+
+    private static void migrateFrom(SQLiteDatabase db, int version) {
+        switch (version) {
+            case 1: {
+                // Version 2 stamps every weather row with the time it was written so stale
+                // forecasts can be told apart from fresh ones. Existing rows count as never
+                // updated and are refreshed on the next fetch.
+                db.execSQL("ALTER TABLE " + WeatherEntry.TABLE_NAME + " ADD COLUMN " +
+                        WeatherEntry.COLUMN_LAST_UPDATED + " INTEGER NOT NULL DEFAULT 0");
+                break;
+            }
+            case 2: {
+                // Version 3 records when each location was last queried so the ones nobody looks
+                // at anymore can be evicted first. Existing locations count as never queried.
+                db.execSQL("ALTER TABLE " + LocationEntry.TABLE_NAME + " ADD COLUMN " +
+                        LocationEntry.COLUMN_LAST_ACCESS + " INTEGER NOT NULL DEFAULT 0");
+                break;
+            }
+            case 3: {
+                // Version 4 indexes the weather table by location and date, so the days of a
+                // location can be queried by its row ID without joining the location table
+                createWeatherLocationDateIndex(db);
+                break;
+            }
+            case 4: {
+                // Version 5 indexes the coordinates of the locations for nearest location and
+                // bounding box queries, and fills the index with the locations already stored
+                WeatherDbHelper.createLocationSpatialIndex(db);
+                break;
+            }
+            case 5: {
+                // Version 6 indexes the city names of the locations for searching by name
+                WeatherDbHelper.createLocationSearchIndex(db);
+                break;
+            }
+            case 6: {
+                // Version 7 stores each day at midnight UTC of its epoch day instead of at local
+                // midnight of the device. Stored dates were local midnights, so each is moved to
+                // midnight UTC of the same local day.
+                normalizeWeatherDates(db);
+                break;
+            }
+            default:
+                throw new IllegalStateException("No migration from database version " + version);
+        }
+    }
+
+    private static void createWeatherLocationDateIndex(SQLiteDatabase db) {
+        db.execSQL("CREATE INDEX " + WeatherEntry.INDEX_LOCATION_DATE + " ON " +
+                WeatherEntry.TABLE_NAME + " (" + WeatherEntry.COLUMN_LOC_KEY + ", " +
+                WeatherEntry.COLUMN_DATE + ")");
+    }
+
+    /*
+     * Moves every date of the weather table to the date of its epoch day in the device's time zone.
+     * Dates written under different zones can land on the same day of a location, which the
+     * UNIQUE constraint doesn't allow, so rather than updating rows in place and letting the
+     * constraint drop whichever row happened to be there, the table is rebuilt with the rows
+     * copied in the order they were written. Of the rows that collide, the one written last is
+     * kept, since every write replaces the row of its day with a new row ID.
+     */
+    static void normalizeWeatherDates(SQLiteDatabase db) {
+        // Work out where each distinct date moves to once, rather than once per row
+        long[] dates;
+        Cursor cursor = db.query(true, WeatherEntry.TABLE_NAME,
+                new String[] {WeatherEntry.COLUMN_DATE}, null, null, null, null, null, null);
+        try {
+            dates = new long[cursor.getCount()];
+            for (int i = 0; cursor.moveToNext(); i++) {
+                dates[i] = cursor.getLong(0);
+            }
+        } finally {
+            cursor.close();
+        }
+
+        db.execSQL("CREATE TEMP TABLE " + DATE_MAP_TABLE + " (" + WeatherEntry.COLUMN_DATE +
+                " INTEGER PRIMARY KEY, normalized_date INTEGER NOT NULL)");
+        SQLiteStatement insertDate = db.compileStatement("INSERT INTO " + DATE_MAP_TABLE +
+                " VALUES (?, ?)");
+        try {
+            for (long date : dates) {
+                insertDate.bindLong(1, date);
+                insertDate.bindLong(2, WeatherContract.getDateFromEpochDay(
+                        WeatherContract.getEpochDay(date)));
+                insertDate.executeInsert();
+            }
+        } finally {
+            insertDate.close();
+        }
+
+        StringBuilder columns = new StringBuilder(WeatherEntry.COLUMN_DATE);
+        StringBuilder values = new StringBuilder(DATE_MAP_TABLE + ".normalized_date");
+        for (String column : WEATHER_COLUMNS_BUT_DATE) {
+            columns.append(", ").append(column);
+            values.append(", ").append(WeatherEntry.TABLE_NAME).append(".").append(column);
+        }
+        rebuildTable(db, WeatherEntry.TABLE_NAME, VERSION_7_WEATHER_TABLE,
+                "INSERT INTO " + WeatherEntry.TABLE_NAME + "_new (" + columns + ") SELECT " +
+                        values + " FROM " + WeatherEntry.TABLE_NAME + " JOIN " + DATE_MAP_TABLE +
+                        " ON " + WeatherEntry.TABLE_NAME + "." + WeatherEntry.COLUMN_DATE + " = " +
+                        DATE_MAP_TABLE + "." + WeatherEntry.COLUMN_DATE);
+        createWeatherLocationDateIndex(db);
+        db.execSQL("DROP TABLE " + DATE_MAP_TABLE);
+    }
+
+    /*
+     * Rebuilds a table for changes SQLite can't make in place, like changing a constraint or
+     * rewriting values the constraints depend on. A new table is created with createSql, which
+     * must create a table named table + "_new", and the rows are copied over by copySql, an
+     * INSERT ... SELECT reading from the table. The copy runs in batches of COPY_BATCH_SIZE rows
+     * by rowid, in rowid order, so no single statement has to work through the whole table. The
+     * old table and its indexes are then dropped and the new table takes its name.
+     *
+     * Must be called inside the upgrade transaction.
+     */
+    static void rebuildTable(SQLiteDatabase db, String table, String createSql, String copySql) {
+        db.execSQL(createSql);
+
+        long maxRowId = 0;
+        Cursor cursor = db.rawQuery("SELECT MAX(rowid) FROM " + table, null);
+        try {
+            if (cursor.moveToFirst() && !cursor.isNull(0)) {
+                maxRowId = cursor.getLong(0);
+            }
+        } finally {
+            cursor.close();
+        }
+
+        String batchSql = copySql + " WHERE " + table + ".rowid > ? AND " + table +
+                ".rowid <= ? ORDER BY " + table + ".rowid";
+        for (long start = 0; start < maxRowId; start += COPY_BATCH_SIZE) {
+            db.execSQL(batchSql, new Object[] {start, start + COPY_BATCH_SIZE});
+        }
+
+        db.execSQL("DROP TABLE " + table);
+        db.execSQL("ALTER TABLE " + table + "_new RENAME TO " + table);
+    }
+}
@@ -1,18 +1,34 @@
 package com.example.android.sunshine.app.data;
 
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentValues;
-import android.content.UriMatcher;
+import android.content.OperationApplicationException;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
+import android.os.Bundle;
 import android.support.annotation.Nullable;
 
 import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
 
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
 /**
  * Created by hnoct on 10/13/2016.
  *
@@ -28,15 +44,43 @@ import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
  */
 
 public class WeatherProvider extends ContentProvider {
-    // The URI Matcher used by the content provider
-    // TODO: Create method for buildUriMatcher()
-    private static final UriMatcher uriMatcher = buildUriMatcher();
+    // Each binder thread routes its calls into a request of its own, reused from call to call
+    private final ThreadLocal<WeatherUriRouter.Request> requests =
+            new ThreadLocal<WeatherUriRouter.Request>() {
+                @Override
+                protected WeatherUriRouter.Request initialValue() {
+                    return new WeatherUriRouter.Request();
+                }
+            };
     private WeatherDbHelper dbHelper;
+    private ChangeNotifier changeNotifier;
+    private LocationAccessTracker accessTracker;
+    private final WeatherRowCache rowCache = new WeatherRowCache();
+    private LocationIdResolver locationIdResolver;
+    // Whether the locations are indexed by an R-tree, looked up on the first spatial query
+    private volatile Boolean hasLocationRTree;
+
+    // How long notifications from writes outside of a write scope are collected before they are
+    // sent together
+    private static final long NOTIFY_WINDOW_MILLIS = 100;
+
+    // Set on the thread applying a batch so weather inserts reuse one compiled statement
+    private final ThreadLocal<BulkInserter> batchInserter = new ThreadLocal<>();
+    // Set on the thread applying a batch to collect the locations whose cached days have to be
+    // dropped once it's committed. Dropping them earlier would let a reader cache them again from
+    // before the commit.
+    private final ThreadLocal<Set<Long>> batchLocationIds = new ThreadLocal<>();
+    // Stands for every location when a write can't tell which ones it changed
+    private static final long ALL_LOCATIONS = -1;
 
     static final int WEATHER = 100;
     static final int WEATHER_WITH_LOCATION = 101;
     static final int WEATHER_WITH_LOCATION_AND_DATE = 102;
+    static final int WEATHER_AGGREGATE = 103;
     static final int LOCATION = 300;
+    static final int LOCATION_NEAREST = 301;
+    static final int LOCATION_BOUNDING_BOX = 302;
+    static final int LOCATION_SEARCH = 303;
 
     private static final SQLiteQueryBuilder weatherByLocationSettingQueryBuilder;
 
@@ -62,29 +106,167 @@ public class WeatherProvider extends ContentProvider {
     private static final String locationSettingSelection =
             LocationEntry.TABLE_NAME + "." + LocationEntry.COLUMN_LOCATION_SETTING + " = ?";
 
-    // location.location_setting ? AND date >= ?
-    private static final String locationSettingWithStartDateSelection =
-            LocationEntry.TABLE_NAME + "." + LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
-                    WeatherEntry.COLUMN_DATE + " >= ?";
-
     // location.location_setting = ? AND date = ?
     private static final String locationSettingAndDateSelection =
             LocationEntry.TABLE_NAME + "." + LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
                     WeatherEntry.COLUMN_DATE + " = ?";
 
-    private Cursor getWeatherByLocationSetting(Uri uri, String[] projection, String sortOrder) {
-        String locationSetting = WeatherEntry.getLocationSettingFromUri(uri);
-        long startDate = WeatherEntry.getStartDateFromUri(uri);
+    // Appended to a selection to get the days after the last one of the previous page
+    // ... AND date > ?
+    private static final String afterDateSelection = " AND " + WeatherEntry.COLUMN_DATE + " > ?";
 
-        String[] selectionArgs;
-        String selection;
+    // weather.location_id = ?
+    private static final String locationIdSelection =
+            WeatherEntry.TABLE_NAME + "." + WeatherEntry.COLUMN_LOC_KEY + " = ?";
 
-        if (startDate == 0) {
-            selection = locationSettingSelection;
-            selectionArgs = new String[] {locationSetting};
-        } else {
-            selectionArgs = new String[] {locationSetting, Long.toString(startDate)};
-            selection = locationSettingWithStartDateSelection;
+
+    // weather.location_id = ? AND date = ?
+    private static final String locationIdAndDateSelection =
+            WeatherEntry.TABLE_NAME + "." + WeatherEntry.COLUMN_LOC_KEY + " = ? AND " +
+                    WeatherEntry.COLUMN_DATE + " = ?";
+
+    // What a query of the days of a location is narrowed down by. Every combination has its
+    // selection built once, in weatherSelections.
+    private static final int SELECT_BY_ID = 1;
+    private static final int SELECT_START_DATE = 1 << 1;
+    private static final int SELECT_AFTER_DATE = 1 << 2;
+    private static final int SELECT_END_DATE = 1 << 3;
+
+    // weather.location_id = ? or location.location_setting = ?, followed by
+    // ... AND date >= ? AND date > ? AND date < ? for the dates it's narrowed down by
+    private static final String[] weatherSelections = buildWeatherSelections();
+
+    private static String[] buildWeatherSelections() {
+        String[] selections = new String[SELECT_END_DATE << 1];
+        for (int flags = 0; flags < selections.length; flags++) {
+            StringBuilder selection = new StringBuilder((flags & SELECT_BY_ID) != 0
+                    ? locationIdSelection
+                    : locationSettingSelection);
+            if ((flags & SELECT_START_DATE) != 0) {
+                selection.append(" AND ").append(WeatherEntry.COLUMN_DATE).append(" >= ?");
+            }
+            if ((flags & SELECT_AFTER_DATE) != 0) {
+                selection.append(afterDateSelection);
+            }
+            if ((flags & SELECT_END_DATE) != 0) {
+                selection.append(" AND ").append(WeatherEntry.COLUMN_DATE).append(" < ?");
+            }
+            selections[flags] = selection.toString();
+        }
+        return selections;
+    }
+
+    /*
+     * Returns the arguments of the selection weatherSelections holds for the flags, in the order
+     * they appear in it
+     */
+    private static String[] buildWeatherSelectionArgs(int flags, String location, long startDate,
+                                                      long afterDate, long endDate) {
+        String[] args = new String[1 + Integer.bitCount(flags & ~SELECT_BY_ID)];
+        int i = 0;
+        args[i++] = location;
+        if ((flags & SELECT_START_DATE) != 0) {
+            args[i++] = Long.toString(startDate);
+        }
+        if ((flags & SELECT_AFTER_DATE) != 0) {
+            args[i++] = Long.toString(afterDate);
+        }
+        if ((flags & SELECT_END_DATE) != 0) {
+            args[i] = Long.toString(endDate);
+        }
+        return args;
+    }
+
+    // Columns that only exist in the location table
+    private static final String[] locationOnlyColumns = {
+            LocationEntry.TABLE_NAME + ".",
+            LocationEntry.COLUMN_LOCATION_SETTING,
+            LocationEntry.COLUMN_CITY_NAME,
+            LocationEntry.COLUMN_COORD_LAT,
+            LocationEntry.COLUMN_COORD_LONG,
+            LocationEntry.COLUMN_LAST_ACCESS
+    };
+
+    /*
+     * Returns true if the projection or sort order refers to the location table, in which case the
+     * query has to join it
+     */
+    private static boolean needsLocationTable(String[] projection, String sortOrder) {
+        // The queries of the WeatherDao already know
+        WeatherDao.Query query = WeatherDao.findQuery(projection);
+        if (query != null && (sortOrder == null || sortOrder.equals(query.sortOrder))) {
+            return query.needsLocationTable;
+        }
+        if (projection == null) {
+            // Every column of both tables
+            return true;
+        }
+        for (String column : projection) {
+            if (refersToLocationTable(column)) {
+                return true;
+            }
+        }
+        return sortOrder != null && refersToLocationTable(sortOrder);
+    }
+
+    private static boolean refersToLocationTable(String expression) {
+        for (String locationColumn : locationOnlyColumns) {
+            if (expression.contains(locationColumn)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * Returns the row ID of the location if the query can go straight to the weather table, or -1
+     * if it has to join the location table
+     */
+    private long resolveLocationId(String locationSetting, String[] projection, String sortOrder) {
+        if (needsLocationTable(projection, sortOrder)) {
+            return -1;
+        }
+        // A location that can't be resolved is left to the join, which is also correct for one
+        // that was inserted while the resolver was being reloaded
+        return locationIdResolver.resolve(locationSetting);
+    }
+
+    private Cursor getWeatherByLocationSetting(WeatherUriRouter.Request request,
+                                               String[] projection, String sortOrder) {
+        String locationSetting = request.locationSetting;
+        long startDate = request.startDate;
+        long afterDate = request.afterDate;
+        int pageSize = request.getPageSize();
+
+        // A page is every day after the date of the last row of the previous page, up to the page
+        // size, so the days have to come in date order
+        String limit = null;
+        if (pageSize > 0) {
+            limit = Integer.toString(pageSize);
+            sortOrder = WeatherEntry.COLUMN_DATE + " ASC";
+        }
+
+        // Look up the days by the (location_id, date) index without joining the location table
+        // when the location can be resolved
+        long locationId = resolveLocationId(locationSetting, projection, sortOrder);
+        int flags = (locationId != -1 ? SELECT_BY_ID : 0) |
+                (startDate != 0 ? SELECT_START_DATE : 0) |
+                (afterDate != 0 ? SELECT_AFTER_DATE : 0);
+        String selection = weatherSelections[flags];
+        String[] selectionArgs = buildWeatherSelectionArgs(flags,
+                locationId != -1 ? Long.toString(locationId) : locationSetting,
+                startDate, afterDate, 0);
+
+        if (locationId != -1) {
+            return dbHelper.getReadableDatabase().query(WeatherEntry.TABLE_NAME,
+                    projection,
+                    selection,
+                    selectionArgs,
+                    null,
+                    null,
+                    sortOrder,
+                    limit
+            );
         }
 
         return weatherByLocationSettingQueryBuilder.query(dbHelper.getReadableDatabase(),
@@ -93,17 +275,134 @@ public class WeatherProvider extends ContentProvider {
             selectionArgs,
             null,
             null,
-            sortOrder
+            sortOrder,
+            limit
         );
     }
 
-    private Cursor getWeatherByLocationSettingAndDate(Uri uri, String[] projection, String sortOrder) {
-        String locationSetting = WeatherEntry.getLocationSettingFromUri(uri);
-        long date = WeatherEntry.getDateFromUri(uri);
+    // Aggregate columns by name, with the SQL that computes them
+    private static final Map<String, String> aggregateColumns = buildAggregateColumns();
+
+    private static final long MILLIS_PER_DAY = EpochDays.MILLIS_PER_DAY;
+
+    private static Map<String, String> buildAggregateColumns() {
+        Map<String, String> columns = new LinkedHashMap<>();
+        columns.put(WeatherEntry.COLUMN_BUCKET_START, "MIN(" + WeatherEntry.COLUMN_DATE + ") AS " +
+                WeatherEntry.COLUMN_BUCKET_START);
+        columns.put(WeatherEntry.COLUMN_DAY_COUNT, "COUNT(*) AS " + WeatherEntry.COLUMN_DAY_COUNT);
+        String[] functions = {
+                WeatherEntry.FUNCTION_MIN, WeatherEntry.FUNCTION_MAX, WeatherEntry.FUNCTION_AVG
+        };
+        for (String column : WeatherEntry.AGGREGATE_COLUMNS) {
+            for (String function : functions) {
+                String name = WeatherEntry.getAggregateColumn(function, column);
+                columns.put(name, function.toUpperCase(Locale.US) + "(" + column + ") AS " + name);
+            }
+        }
+        return columns;
+    }
+
+    /*
+     * Aggregates the days of a location in SQLite, so callers after a weekly high or an average
+     * humidity get a row per bucket instead of every day to fold themselves
+     */
+    private Cursor getWeatherAggregate(WeatherUriRouter.Request request, String[] projection) {
+        String locationSetting = request.locationSetting;
+        long startDate = request.startDate;
+        long endDate = request.endDate;
+        int bucketDays = request.bucketDays;
+
+        // Only the aggregates the contract defines can be asked for
+        String[] columns;
+        if (projection == null) {
+            columns = aggregateColumns.values().toArray(new String[aggregateColumns.size()]);
+        } else {
+            columns = new String[projection.length];
+            for (int i = 0; i < projection.length; i++) {
+                columns[i] = aggregateColumns.get(projection[i]);
+                if (columns[i] == null) {
+                    throw new IllegalArgumentException("Unknown aggregate column: " + projection[i]);
+                }
+            }
+        }
+
+        long locationId = locationIdResolver.resolve(locationSetting);
+        int flags = (locationId != -1 ? SELECT_BY_ID : 0) |
+                (startDate != 0 ? SELECT_START_DATE : 0) |
+                (endDate != 0 ? SELECT_END_DATE : 0);
+        String selection = weatherSelections[flags];
+        String[] selectionArgs = buildWeatherSelectionArgs(flags,
+                locationId != -1 ? Long.toString(locationId) : locationSetting,
+                startDate, 0, endDate);
+
+        String groupBy = null;
+        String orderBy = null;
+        if (bucketDays > 0) {
+            // Buckets are counted from the start of the range. Half a day is added before dividing
+            // so a date that isn't exactly at the start of its day still falls in the right
+            // bucket.
+            long bucketMillis = bucketDays * MILLIS_PER_DAY;
+            groupBy = "(" + WeatherEntry.COLUMN_DATE + " - " + startDate + " + " +
+                    (MILLIS_PER_DAY / 2) + ") / " + bucketMillis;
+            orderBy = "MIN(" + WeatherEntry.COLUMN_DATE + ") ASC";
+        }
+
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        if (locationId != -1) {
+            return db.query(WeatherEntry.TABLE_NAME, columns, selection, selectionArgs, groupBy,
+                    null, orderBy);
+        }
+        return weatherByLocationSettingQueryBuilder.query(db, columns, selection, selectionArgs,
+                groupBy, null, orderBy);
+    }
+
+    private Cursor getWeatherByLocationSettingAndDate(WeatherUriRouter.Request request,
+                                                      String[] projection, String sortOrder) {
+        String locationSetting = request.locationSetting;
+        long date = request.date;
 
         String[] selectionArgs = new String[] {locationSetting, Long.toString(date)};
         String selection = locationSettingAndDateSelection;
 
+        // Serve the day from memory when the projection only asks for plain columns
+        int[] columns = WeatherRowCache.resolveProjection(projection);
+        if (columns != null) {
+            Object[] row = rowCache.get(locationSetting, date);
+            if (row == null) {
+                long generation = rowCache.getGeneration();
+                Cursor cursor = weatherByLocationSettingQueryBuilder.query(
+                        dbHelper.getReadableDatabase(),
+                        WeatherRowCache.COLUMNS,
+                        selection,
+                        selectionArgs,
+                        null,
+                        null,
+                        null
+                );
+                try {
+                    if (cursor.moveToFirst()) {
+                        row = WeatherRowCache.readRow(cursor);
+                        rowCache.put(locationSetting, date, row, generation);
+                    }
+                } finally {
+                    cursor.close();
+                }
+            }
+            return WeatherRowCache.toCursor(row, projection, columns);
+        }
+
+        long locationId = resolveLocationId(locationSetting, projection, sortOrder);
+        if (locationId != -1) {
+            return dbHelper.getReadableDatabase().query(WeatherEntry.TABLE_NAME,
+                    projection,
+                    locationIdAndDateSelection,
+                    new String[] {Long.toString(locationId), Long.toString(date)},
+                    null,
+                    null,
+                    sortOrder
+            );
+        }
+
         return weatherByLocationSettingQueryBuilder.query(dbHelper.getReadableDatabase(),
                 projection,
                 selection,
@@ -114,50 +413,227 @@ public class WeatherProvider extends ContentProvider {
         );
     }
 
-    static UriMatcher buildUriMatcher() {
-        // 1) The code passed into the constructor represents the code to return for the root
-        // URI. It's common to use NO_MATCH as the code for thie case
-        UriMatcher uriMatcher = new UriMatcher(UriMatcher.NO_MATCH);
+    // Half the side of the first box searched for the nearest locations, in degrees of latitude
+    private static final double NEAREST_START_RADIUS = 0.5;
+
+    // Keeps the longitude scale finite at the poles
+    private static final double MIN_LONGITUDE_SCALE = 0.01;
+
+    private boolean hasLocationRTree(SQLiteDatabase db) {
+        Boolean rTree = hasLocationRTree;
+        if (rTree == null) {
+            rTree = WeatherDbHelper.hasLocationRTree(db);
+            hasLocationRTree = rTree;
+        }
+        return rTree;
+    }
+
+    /*
+     * Queries the locations inside the box, edges included. The R-tree is searched for boxes that
+     * overlap it and the coordinates are then compared exactly, since the R-tree stores them with
+     * less precision than the location table.
+     */
+    private Cursor queryLocationsInBox(String[] columns, double minLat, double maxLat,
+                                       double minLon, double maxLon, String orderBy,
+                                       String limit) {
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        String[] boxArgs = new String[] {Double.toString(minLat), Double.toString(maxLat),
+                Double.toString(minLon), Double.toString(maxLon)};
+
+        // location.coord_lat BETWEEN ? AND ? AND location.coord_long BETWEEN ? AND ?
+        String selection = LocationEntry.TABLE_NAME + "." + LocationEntry.COLUMN_COORD_LAT +
+                " BETWEEN ? AND ? AND " + LocationEntry.TABLE_NAME + "." +
+                LocationEntry.COLUMN_COORD_LONG + " BETWEEN ? AND ?";
+        if (!hasLocationRTree(db)) {
+            // The coord index narrows the search by latitude
+            return db.query(LocationEntry.TABLE_NAME, columns, selection, boxArgs, null, null,
+                    orderBy, limit);
+        }
+
+        // location INNER JOIN location_rtree ON location._id = location_rtree.id
+        String tables = LocationEntry.TABLE_NAME + " INNER JOIN " +
+                LocationEntry.TABLE_SPATIAL_INDEX + " ON " + LocationEntry.TABLE_NAME + "." +
+                LocationEntry._ID + " = " + LocationEntry.TABLE_SPATIAL_INDEX + ".id";
+        String rTreeSelection = "max_lat >= ? AND min_lat <= ? AND max_lon >= ? AND min_lon <= ?";
+        String[] selectionArgs = new String[] {boxArgs[0], boxArgs[1], boxArgs[2], boxArgs[3],
+                boxArgs[0], boxArgs[1], boxArgs[2], boxArgs[3]};
+
+        SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
+        builder.setTables(tables);
+        return builder.query(db, columns, rTreeSelection + " AND " + selection, selectionArgs,
+                null, null, orderBy, limit);
+    }
+
+    private static String[] getLocationColumns(String[] projection) {
+        // The spatial index's own columns are left out of the join
+        return projection != null ? projection : new String[] {LocationEntry.TABLE_NAME + ".*"};
+    }
+
+    private Cursor getLocationsInBoundingBox(WeatherUriRouter.Request request,
+                                             String[] projection, String sortOrder) {
+        return queryLocationsInBox(getLocationColumns(projection),
+                request.requireCoordinate(request.minLat, LocationEntry.PARAM_MIN_LAT),
+                request.requireCoordinate(request.maxLat, LocationEntry.PARAM_MAX_LAT),
+                request.requireCoordinate(request.minLon, LocationEntry.PARAM_MIN_LONG),
+                request.requireCoordinate(request.maxLon, LocationEntry.PARAM_MAX_LONG),
+                sortOrder, null);
+    }
+
+    /*
+     * Finds the locations nearest to the point by searching a box around it, doubling the box
+     * until it holds enough locations that are closer than its edges. Only the few locations in
+     * the box are sorted by distance, instead of the whole table.
+     *
+     * Distance is measured on a flat map with longitude scaled at the latitude of the point, which
+     * orders nearby locations correctly. Boxes don't wrap around the antimeridian.
+     */
+    private Cursor getNearestLocations(WeatherUriRouter.Request request, String[] projection) {
+        double lat = request.requireCoordinate(request.lat, LocationEntry.PARAM_LAT);
+        double lon = request.requireCoordinate(request.lon, LocationEntry.PARAM_LONG);
+        // One location unless more were asked for
+        int count = request.limit != WeatherUriRouter.NO_LIMIT ? request.limit : 1;
+        double longitudeScale = Math.max(Math.cos(Math.toRadians(lat)), MIN_LONGITUDE_SCALE);
+
+        // (coord_lat - (lat)) * (coord_lat - (lat)) +
+        //         ((coord_long - (lon)) * scale) * ((coord_long - (lon)) * scale) AS distance
+        String latDelta = "(" + LocationEntry.TABLE_NAME + "." +
+                LocationEntry.COLUMN_COORD_LAT + " - (" + lat + "))";
+        String longDelta = "((" + LocationEntry.TABLE_NAME + "." +
+                LocationEntry.COLUMN_COORD_LONG + " - (" + lon + ")) * " + longitudeScale + ")";
+        String[] requested = getLocationColumns(projection);
+        String[] columns = new String[requested.length + 1];
+        System.arraycopy(requested, 0, columns, 0, requested.length);
+        columns[requested.length] = latDelta + " * " + latDelta + " + " + longDelta + " * " +
+                longDelta + " AS " + LocationEntry.COLUMN_DISTANCE;
+
+        String orderBy = LocationEntry.COLUMN_DISTANCE + " ASC";
+        String limit = Integer.toString(count);
+        for (double radius = NEAREST_START_RADIUS; radius < 180; radius *= 2) {
+            double longRadius = radius / longitudeScale;
+            Cursor cursor = queryLocationsInBox(columns, lat - radius, lat + radius,
+                    lon - longRadius, lon + longRadius, orderBy, limit);
+
+            // Every location outside the box is farther than radius, so the box holds the nearest
+            // locations once the farthest one found is within radius
+            if (cursor.getCount() >= count && (!cursor.moveToLast() ||
+                    cursor.getDouble(requested.length) <= radius * radius)) {
+                cursor.moveToPosition(-1);
+                return cursor;
+            }
+            cursor.close();
+        }
+
+        // The box covers the whole map
+        return dbHelper.getReadableDatabase().query(LocationEntry.TABLE_NAME, columns, null, null,
+                null, null, orderBy, limit);
+    }
+
+    // location INNER JOIN location_search ON location._id = location_search.docid
+    private static final String locationSearchTables = LocationEntry.TABLE_NAME + " INNER JOIN " +
+            LocationEntry.TABLE_SEARCH_INDEX + " ON " + LocationEntry.TABLE_NAME + "." +
+            LocationEntry._ID + " = " + LocationEntry.TABLE_SEARCH_INDEX + ".docid";
+
+    // location_search MATCH ?
+    private static final String locationSearchSelection =
+            LocationEntry.TABLE_SEARCH_INDEX + " MATCH ?";
+
+    /*
+     * Turns what the user typed into a full-text query matching city names with a word starting
+     * with each of the typed words, eg: "san fr" becomes "san* fr*". Anything that isn't a letter
+     * or a digit separates words, so the user can't type full-text query syntax. Returns null if
+     * nothing was typed.
+     */
+    static String buildLocationMatch(String query) {
+        StringBuilder match = new StringBuilder();
+        int start = -1;
+        for (int i = 0; i <= query.length(); i++) {
+            boolean wordChar = i < query.length() && Character.isLetterOrDigit(query.charAt(i));
+            if (wordChar && start == -1) {
+                start = i;
+            } else if (!wordChar && start != -1) {
+                if (match.length() > 0) {
+                    match.append(' ');
+                }
+                match.append(query, start, i).append('*');
+                start = -1;
+            }
+        }
+        return match.length() > 0 ? match.toString() : null;
+    }
+
+    /*
+     * Matches the query against the city names through the full-text index. The best matches come
+     * first: names that start with the first typed word, then locations used most recently, then
+     * shorter names, which are closer to what was typed.
+     */
+    private Cursor searchLocations(WeatherUriRouter.Request request, String[] projection) {
+        String[] columns = getLocationColumns(projection);
+        String match = buildLocationMatch(request.searchQuery);
+        // Only a number may go into the LIMIT clause
+        String limit = request.limit != WeatherUriRouter.NO_LIMIT
+                ? Integer.toString(request.limit)
+                : null;
+
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        if (match == null) {
+            // Nothing to match, so nothing is returned
+            return db.query(LocationEntry.TABLE_NAME, columns, "0", null, null, null, null);
+        }
 
-        // 2) Use the addURI function to match each of the types using the constants from
-        // WeatherContract to help define the types to the UriMatcher
+        String firstWord = match.substring(0, match.indexOf('*'));
+        String cityName = LocationEntry.TABLE_NAME + "." + LocationEntry.COLUMN_CITY_NAME;
+        String orderBy = "(" + cityName + " LIKE " +
+                DatabaseUtils.sqlEscapeString(firstWord + "%") + ") DESC, " +
+                LocationEntry.TABLE_NAME + "." + LocationEntry.COLUMN_LAST_ACCESS + " DESC, " +
+                "LENGTH(" + cityName + ") ASC, " + cityName + " ASC";
 
-        // com.example.android.sunshine.app/weather
-        uriMatcher.addURI(WeatherContract.CONTENT_AUTHORITY, WeatherEntry.TABLE_NAME, WEATHER);
-        // com.example.android.sunshine.app/location
-        uriMatcher.addURI(WeatherContract.CONTENT_AUTHORITY, LocationEntry.TABLE_NAME, LOCATION);
-        // com.example.android.sunshine.app/weather/location/date#
-        uriMatcher.addURI(WeatherContract.CONTENT_AUTHORITY,  WeatherEntry.TABLE_NAME + "/" +
-            LocationEntry.TABLE_NAME + "/" + WeatherEntry.COLUMN_DATE,
-            WEATHER_WITH_LOCATION_AND_DATE);
-        // com.example.android.sunshine.app/weather
-        uriMatcher.addURI(WeatherContract.CONTENT_AUTHORITY, WeatherEntry.TABLE_NAME, WEATHER);
-        // com.example.android.sunshine.app/weather/location
-        uriMatcher.addURI(WeatherContract.CONTENT_AUTHORITY, WeatherEntry.TABLE_NAME + "/" +
-                LocationEntry.TABLE_NAME , WEATHER_WITH_LOCATION);
-        // 3) Return the new matcher;
-        return uriMatcher;
+        SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
+        builder.setTables(locationSearchTables);
+        return builder.query(db, columns, locationSearchSelection, new String[] {match}, null,
+                null, orderBy, limit);
+    }
+
+    /*
+     * Routes the URI into the request of the calling thread, which is only good until the next URI
+     * the thread routes
+     */
+    private WeatherUriRouter.Request route(Uri uri) {
+        WeatherUriRouter.Request request = requests.get();
+        WeatherUriRouter.route(uri, request);
+        return request;
     }
 
     @Override
     public boolean onCreate() {
         dbHelper = new WeatherDbHelper(getContext());
+        changeNotifier = new ChangeNotifier(getContext().getContentResolver(),
+                NOTIFY_WINDOW_MILLIS);
+        accessTracker = new LocationAccessTracker(dbHelper);
+        locationIdResolver = new LocationIdResolver(dbHelper);
         return true;
     }
 
     @Override
     public String getType(Uri uri) {
-        final int match = uriMatcher.match(uri);
+        final int match = route(uri).match;
 
         switch (match) {
             case WEATHER_WITH_LOCATION_AND_DATE:
                 return WeatherEntry.CONTENT_ITEM_TYPE;
             case WEATHER_WITH_LOCATION:
-                return LocationEntry.CONTENT_ITEM_TYPE;
+                return WeatherEntry.CONTENT_TYPE;
+            case WEATHER_AGGREGATE:
+                return WeatherEntry.CONTENT_TYPE;
             case WEATHER:
                 return WeatherEntry.CONTENT_TYPE;
             case LOCATION:
                 return LocationEntry.CONTENT_TYPE;
+            case LOCATION_NEAREST:
+                return LocationEntry.CONTENT_TYPE;
+            case LOCATION_BOUNDING_BOX:
+                return LocationEntry.CONTENT_TYPE;
+            case LOCATION_SEARCH:
+                return LocationEntry.CONTENT_TYPE;
             default:
                 throw new UnsupportedOperationException("Unknown URI: " + uri);
         }
@@ -166,25 +642,65 @@ public class WeatherProvider extends ContentProvider {
     @Override
     public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
         Cursor cursor;
-        switch (uriMatcher.match(uri)) {
+        WeatherUriRouter.Request request = route(uri);
+        switch (request.match) {
             // weather/*/*
             case WEATHER_WITH_LOCATION_AND_DATE: {
-                cursor = getWeatherByLocationSettingAndDate(uri, projection, sortOrder);
+                cursor = getWeatherByLocationSettingAndDate(request, projection, sortOrder);
+                accessTracker.recordAccess(request.locationSetting);
+                break;
+            }
+            // weather/*/aggregate
+            case WEATHER_AGGREGATE: {
+                cursor = getWeatherAggregate(request, projection);
+                accessTracker.recordAccess(request.locationSetting);
                 break;
             }
             // weather/*
             case WEATHER_WITH_LOCATION: {
-                cursor = getWeatherByLocationSetting(uri, projection, sortOrder);
+                cursor = getWeatherByLocationSetting(request, projection, sortOrder);
+                accessTracker.recordAccess(request.locationSetting);
                 break;
             }
             // weather
             case WEATHER: {
-                cursor = null;
+                cursor = dbHelper.getReadableDatabase().query(
+                        WeatherEntry.TABLE_NAME,
+                        projection,
+                        selection,
+                        selectionArgs,
+                        null,
+                        null,
+                        sortOrder
+                );
                 break;
             }
             // location
             case LOCATION: {
-                cursor = null;
+                cursor = dbHelper.getReadableDatabase().query(
+                        LocationEntry.TABLE_NAME,
+                        projection,
+                        selection,
+                        selectionArgs,
+                        null,
+                        null,
+                        sortOrder
+                );
+                break;
+            }
+            // location/nearest
+            case LOCATION_NEAREST: {
+                cursor = getNearestLocations(request, projection);
+                break;
+            }
+            // location/bbox
+            case LOCATION_BOUNDING_BOX: {
+                cursor = getLocationsInBoundingBox(request, projection, sortOrder);
+                break;
+            }
+            // location/search
+            case LOCATION_SEARCH: {
+                cursor = searchLocations(request, projection);
                 break;
             }
             default:
@@ -198,17 +714,20 @@ public class WeatherProvider extends ContentProvider {
     @Override
     public Uri insert(Uri uri, ContentValues contentValues) {
         final SQLiteDatabase db = dbHelper.getWritableDatabase();
-        final int match = uriMatcher.match(uri);
+        final int match = route(uri).match;
         Uri returnUri;
 
         switch (match) {
             case WEATHER: {
-                // Normalize date to Julian Day
-                normalizeDate(contentValues);
-                long _id = db.insert(WeatherEntry.TABLE_NAME, null, contentValues);
+                stampLastUpdated(contentValues);
+                BulkInserter inserter = batchInserter.get();
+                long _id = inserter != null
+                        ? inserter.insert(contentValues)
+                        : db.insert(WeatherEntry.TABLE_NAME, null, contentValues);
 
                 // If insert is successful, build the URI for the row
                 if (_id != -1) {
+                    invalidateLocation(contentValues.getAsLong(WeatherEntry.COLUMN_LOC_KEY));
                     returnUri = WeatherEntry.buildWeatherUri(_id);
                 } else {
                     throw new SQLException("Failed to insert row into " + uri);
@@ -216,9 +735,16 @@ public class WeatherProvider extends ContentProvider {
                 break;
             }
             case LOCATION: {
+                // A location that was just added counts as accessed, so it isn't the first to be
+                // evicted before anyone had the chance to look at it
+                if (!contentValues.containsKey(LocationEntry.COLUMN_LAST_ACCESS)) {
+                    contentValues.put(LocationEntry.COLUMN_LAST_ACCESS, System.currentTimeMillis());
+                }
                 long _id = db.insert(LocationEntry.TABLE_NAME, null, contentValues);
 
                 if (_id != -1) {
+                    locationIdResolver.onLocationInserted(
+                            contentValues.getAsString(LocationEntry.COLUMN_LOCATION_SETTING), _id);
                     returnUri = LocationEntry.buildLocationUri(_id);
                 } else {
                     throw new SQLException("Failed to insert row into " + uri);
@@ -229,25 +755,133 @@ public class WeatherProvider extends ContentProvider {
                 throw new UnsupportedOperationException("Unknown URI: " + uri);
         }
 
-        // TODO: Write something about this command.
-        getContext().getContentResolver().notifyChange(uri, null);
+        // Let observers know the data changed. Inserts made in a loop are coalesced into a single
+        // notification.
+        changeNotifier.notifyChange(uri);
         return returnUri;
     }
 
     @Override
-    public int delete(Uri uri, String s, String[] strings) {
-        return 0;
+    public int delete(Uri uri, String selection, String[] selectionArgs) {
+        final SQLiteDatabase db = dbHelper.getWritableDatabase();
+        final int match = route(uri).match;
+        int rowsDeleted;
+
+        // A null selection deletes every row but doesn't report how many, while "1" does
+        if (selection == null) {
+            selection = "1";
+        }
+
+        switch (match) {
+            case WEATHER: {
+                rowsDeleted = db.delete(WeatherEntry.TABLE_NAME, selection, selectionArgs);
+                break;
+            }
+            case LOCATION: {
+                rowsDeleted = db.delete(LocationEntry.TABLE_NAME, selection, selectionArgs);
+                if (rowsDeleted != 0) {
+                    locationIdResolver.invalidate();
+                }
+                break;
+            }
+            default:
+                throw new UnsupportedOperationException("Unknown URI: " + uri);
+        }
+
+        // Only notify observers if something was actually deleted
+        if (rowsDeleted != 0) {
+            invalidateLocation(ALL_LOCATIONS);
+            changeNotifier.notifyChange(uri);
+        }
+        return rowsDeleted;
     }
 
     @Override
-    public int update(Uri uri, ContentValues contentValues, String s, String[] strings) {
-        return 0;
+    public int update(Uri uri, ContentValues contentValues, String selection,
+                      String[] selectionArgs) {
+        final SQLiteDatabase db = dbHelper.getWritableDatabase();
+        final WeatherUriRouter.Request request = route(uri);
+        int rowsUpdated;
+
+        switch (request.match) {
+            case WEATHER: {
+                stampLastUpdated(contentValues);
+                rowsUpdated = db.update(WeatherEntry.TABLE_NAME, contentValues, selection,
+                        selectionArgs);
+                if (rowsUpdated != 0) {
+                    // The selection could match the days of any location
+                    invalidateLocation(ALL_LOCATIONS);
+                }
+                break;
+            }
+            // weather/*
+            case WEATHER_WITH_LOCATION: {
+                long locationId = locationIdResolver.resolve(request.locationSetting);
+                if (locationId == -1) {
+                    rowsUpdated = 0;
+                    break;
+                }
+                stampLastUpdated(contentValues);
+                rowsUpdated = db.update(WeatherEntry.TABLE_NAME, contentValues,
+                        DatabaseUtils.concatenateWhere(
+                                WeatherEntry.COLUMN_LOC_KEY + " = " + locationId, selection),
+                        selectionArgs);
+                if (rowsUpdated != 0) {
+                    invalidateLocation(locationId);
+                }
+                break;
+            }
+            case LOCATION: {
+                rowsUpdated = db.update(LocationEntry.TABLE_NAME, contentValues, selection,
+                        selectionArgs);
+                if (rowsUpdated != 0) {
+                    locationIdResolver.invalidate();
+                    // Cached days carry the city and coordinates of their location
+                    invalidateLocation(ALL_LOCATIONS);
+                }
+                break;
+            }
+            default:
+                throw new UnsupportedOperationException("Unknown URI: " + uri);
+        }
+
+        // Only notify observers if something actually changed
+        if (rowsUpdated != 0) {
+            changeNotifier.notifyChange(uri);
+        }
+        return rowsUpdated;
     }
 
-    private void normalizeDate(ContentValues contentValues) {
-        if (contentValues.containsKey(WeatherEntry.COLUMN_DATE)) {
-            long dateValue = contentValues.getAsLong(WeatherEntry.COLUMN_DATE);
-            contentValues.put(WeatherEntry.COLUMN_DATE, dateValue);
+    /*
+     * Records when the weather row was written so the freshness of a location's forecast can be
+     * checked without going to the network
+     */
+    private void stampLastUpdated(ContentValues contentValues) {
+        if (!contentValues.containsKey(WeatherEntry.COLUMN_LAST_UPDATED)) {
+            contentValues.put(WeatherEntry.COLUMN_LAST_UPDATED, System.currentTimeMillis());
+        }
+    }
+
+    /*
+     * Drops the days cached for the location, or for every location if locationId is
+     * ALL_LOCATIONS. Within a batch that waits until the batch is committed.
+     */
+    private void invalidateLocation(long locationId) {
+        Set<Long> pendingLocationIds = batchLocationIds.get();
+        if (pendingLocationIds != null) {
+            pendingLocationIds.add(locationId);
+        } else {
+            invalidateLocations(Collections.singleton(locationId));
+        }
+    }
+
+    private void invalidateLocations(Set<Long> locationIds) {
+        if (locationIds.contains(ALL_LOCATIONS)) {
+            rowCache.invalidateAll();
+            return;
+        }
+        for (long locationId : locationIds) {
+            rowCache.invalidateLocation(locationId);
         }
     }
 
@@ -258,33 +892,43 @@ public class WeatherProvider extends ContentProvider {
     @Override
     public int bulkInsert(Uri uri, ContentValues[] values) {
         final SQLiteDatabase db = dbHelper.getWritableDatabase();
-        final int match = uriMatcher.match(uri);
+        final int match = route(uri).match;
 
         switch(match) {
             case WEATHER: {
-                // Prepare the database for inserts
-                db.beginTransaction();
+                // Prepare the database for inserts. Readers can carry on while the batch is written.
+                WeatherDbHelper.beginWriteTransaction(db);
                 // Count the number of rows successfully inserted to be returned by the method
                 int returnCount = 0;
+                // Locations whose cached days have to be dropped once the batch is committed
+                Set<Long> locationIds = new HashSet<>();
+                // Compiles the INSERT once for the whole batch instead of once per row
+                BulkInserter inserter = new BulkInserter(db, WeatherEntry.TABLE_NAME);
+                // Observers hear about the whole batch once it's written
+                changeNotifier.beginScope();
                 try {
                     // Insert each row individually utilizing the Content Values
                     for (ContentValues contentValues : values) {
-                        // Normalize date of the Content Value to the Julian Day
-                        normalizeDate(contentValues);
-                        long _id = db.insert(WeatherEntry.TABLE_NAME, null, contentValues);
+                        stampLastUpdated(contentValues);
+                        long _id = inserter.insert(contentValues);
                         // If the insert is successful, increase the returnCount
                         if (_id != -1) {
                             returnCount++;
+                            locationIds.add(contentValues.getAsLong(WeatherEntry.COLUMN_LOC_KEY));
                         }
                     }
                     // Ends the single row to be inserted
                     db.setTransactionSuccessful();
                 } finally {
+                    inserter.close();
                     // Tells the database to write all the rows sequentially in one I/O action
                     db.endTransaction();
+                    invalidateLocations(locationIds);
+                    if (returnCount > 0) {
+                        changeNotifier.notifyChange(uri);
+                    }
+                    changeNotifier.endScope();
                 }
-                // TODO: Still not sure what this command does yet
-                getContext().getContentResolver().notifyChange(uri, null);
                 return returnCount;
             }
             // TODO: Write something about the default statement
@@ -293,11 +937,353 @@ public class WeatherProvider extends ContentProvider {
         }
     }
 
+    /*
+     * Provider methods that don't map to a single table operation. Only available from Honeycomb.
+     *
+     *      METHOD_COMPACT returns up to arg bytes of free pages in the database file to the file
+     *      system and reports how many were reclaimed under EXTRA_BYTES_RECLAIMED. The first call
+     *      on a database from before incremental auto-vacuum converts it with a full VACUUM.
+     *
+     *      METHOD_EVICT evicts locations until the weather and viewed locations fit in arg bytes
+     *      and reports how many were evicted under EXTRA_LOCATIONS_EVICTED
+     */
+    @Override
+    public Bundle call(String method, String arg, Bundle extras) {
+        if (WeatherContract.METHOD_COMPACT.equals(method)) {
+            long byteBudget = parseByteCount(method, arg);
+            Bundle result = new Bundle();
+            result.putLong(WeatherContract.EXTRA_BYTES_RECLAIMED,
+                    dbHelper.incrementalVacuum(byteBudget));
+            return result;
+        }
+        if (WeatherContract.METHOD_EVICT.equals(method)) {
+            long maxBytes = parseByteCount(method, arg);
+            String keepLocation = extras != null
+                    ? extras.getString(WeatherContract.EXTRA_KEEP_LOCATION)
+                    : null;
+            Bundle result = new Bundle();
+            result.putInt(WeatherContract.EXTRA_LOCATIONS_EVICTED,
+                    evictLocations(maxBytes, keepLocation));
+            return result;
+        }
+        if (WeatherContract.METHOD_INSERT_FORECASTS.equals(method)) {
+            Bundle result = new Bundle();
+            result.putInt(WeatherContract.EXTRA_ROWS_INSERTED,
+                    insertForecasts(ForecastBlock.fromBundle(extras)));
+            return result;
+        }
+        if (WeatherContract.METHOD_IMPORT_LOCATIONS.equals(method)) {
+            Bundle result = new Bundle();
+            result.putInt(WeatherContract.EXTRA_LOCATIONS_IMPORTED, importLocations(arg));
+            return result;
+        }
+        return super.call(method, arg, extras);
+    }
+
+    /*
+     * Reads the byte count passed as the arg of a call. The provider is exported, so a missing or
+     * malformed count is reported to the caller instead of surfacing as a NumberFormatException.
+     */
+    private static long parseByteCount(String method, String arg) {
+        long bytes;
+        try {
+            bytes = arg != null ? Long.parseLong(arg) : -1;
+        } catch (NumberFormatException e) {
+            bytes = -1;
+        }
+        if (bytes < 0) {
+            throw new IllegalArgumentException(method + " needs a byte count as its arg, not " +
+                    arg);
+        }
+        return bytes;
+    }
+
+    // INSERT INTO weather (location_id, date, short_desc, weather_id, max, min, humidity, pressure,
+    //         wind, degrees, updated) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+    private static final String SQL_INSERT_FORECAST_DAY = "INSERT INTO " +
+            WeatherEntry.TABLE_NAME + " (" +
+            WeatherEntry.COLUMN_LOC_KEY + ", " +
+            WeatherEntry.COLUMN_DATE + ", " +
+            WeatherEntry.COLUMN_SHORT_DESC + ", " +
+            WeatherEntry.COLUMN_WEATHER_ID + ", " +
+            WeatherEntry.COLUMN_MAX_TEMP + ", " +
+            WeatherEntry.COLUMN_MIN_TEMP + ", " +
+            WeatherEntry.COLUMN_HUMIDITY + ", " +
+            WeatherEntry.COLUMN_PRESSURE + ", " +
+            WeatherEntry.COLUMN_WIND_SPEED + ", " +
+            WeatherEntry.COLUMN_DEGREES + ", " +
+            WeatherEntry.COLUMN_LAST_UPDATED +
+            ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    // Stored for days that came without a description
+    private static final String NO_DESCRIPTION = "";
+
+    // UPDATE weather SET updated = ? WHERE location_id = ?
+    private static final String SQL_TOUCH_FORECAST = "UPDATE " + WeatherEntry.TABLE_NAME +
+            " SET " + WeatherEntry.COLUMN_LAST_UPDATED + " = ? WHERE " +
+            WeatherEntry.COLUMN_LOC_KEY + " = ?";
+
+    /*
+     * Writes every location of the block in one transaction, binding the days straight from the
+     * block's arrays to one compiled INSERT. The transaction never yields, so either the whole
+     * block is written or none of it is. Returns the number of weather rows written.
+     */
+    private int insertForecasts(ForecastBlock block) {
+        final SQLiteDatabase db = dbHelper.getWritableDatabase();
+        long now = System.currentTimeMillis();
+        int rowCount = 0;
+        // Locations whose cached days have to be dropped once the block is committed
+        Set<Long> locationIds = new HashSet<>();
+
+        WeatherDbHelper.beginWriteTransaction(db);
+        changeNotifier.beginScope();
+        SQLiteStatement insertDay = db.compileStatement(SQL_INSERT_FORECAST_DAY);
+        SQLiteStatement touch = db.compileStatement(SQL_TOUCH_FORECAST);
+        boolean successful = false;
+        try {
+            for (int location = 0; location < block.getLocationCount(); location++) {
+                String locationSetting = block.getLocationSetting(location);
+                long locationId = locationIdResolver.resolve(locationSetting);
+                if (block.isNotModified(location)) {
+                    if (locationId != -1) {
+                        touch.bindLong(1, now);
+                        touch.bindLong(2, locationId);
+                        touch.execute();
+                        locationIds.add(locationId);
+                    }
+                    continue;
+                }
+                if (block.getDayCount(location) == 0) {
+                    continue;
+                }
+
+                if (locationId == -1) {
+                    String cityName = block.getCityName(location);
+                    Uri locationUri = insert(LocationEntry.CONTENT_URI,
+                            buildLocationValues(locationSetting,
+                                    cityName != null ? cityName : locationSetting,
+                                    block.getLatitude(location), block.getLongitude(location)));
+                    locationId = Long.parseLong(locationUri.getLastPathSegment());
+                }
+                locationIds.add(locationId);
+
+                int firstDay = block.getFirstDay(location);
+                int endDay = firstDay + block.getDayCount(location);
+                for (int day = firstDay; day < endDay; day++) {
+                    insertDay.bindLong(1, locationId);
+                    insertDay.bindLong(2,
+                            WeatherContract.getDateFromEpochDay(block.getEpochDay(day)));
+                    // short_desc can't be null, and a day OWM sent without a weather object
+                    // shouldn't roll back every other forecast in the block
+                    String description = block.getDescription(day);
+                    insertDay.bindString(3, description != null ? description : NO_DESCRIPTION);
+                    insertDay.bindLong(4, block.getWeatherId(day));
+                    insertDay.bindDouble(5, block.getHigh(day));
+                    insertDay.bindDouble(6, block.getLow(day));
+                    insertDay.bindDouble(7, block.getHumidity(day));
+                    insertDay.bindDouble(8, block.getPressure(day));
+                    insertDay.bindDouble(9, block.getWindSpeed(day));
+                    insertDay.bindDouble(10, block.getWindDirection(day));
+                    insertDay.bindLong(11, now);
+                    insertDay.executeInsert();
+                    rowCount++;
+                }
+            }
+            db.setTransactionSuccessful();
+            successful = true;
+        } finally {
+            insertDay.close();
+            touch.close();
+            db.endTransaction();
+            // Readers may have cached rows of these locations from before the commit
+            invalidateLocations(locationIds);
+            if (!successful) {
+                // Locations inserted here may have been rolled back
+                locationIdResolver.invalidate();
+            }
+            changeNotifier.notifyChange(WeatherEntry.CONTENT_URI);
+            changeNotifier.endScope();
+        }
+        return rowCount;
+    }
+
+    private static ContentValues buildLocationValues(String locationSetting, String cityName,
+                                                     double lat, double lon) {
+        ContentValues locationValues = new ContentValues();
+        locationValues.put(LocationEntry.COLUMN_LOCATION_SETTING, locationSetting);
+        locationValues.put(LocationEntry.COLUMN_CITY_NAME, cityName);
+        locationValues.put(LocationEntry.COLUMN_COORD_LAT, lat);
+        locationValues.put(LocationEntry.COLUMN_COORD_LONG, lon);
+        return locationValues;
+    }
+
+    /*
+     * Imports the catalogue of locations at the asset path. Returns the number of new locations.
+     */
+    private int importLocations(String assetPath) {
+        // A catalogue writes far more pages than any refresh. Letting the log grow for the whole
+        // import and copying it back once is cheaper than a checkpoint every few batches.
+        dbHelper.setCheckpointPolicy(0);
+        try {
+            return importCatalogue(assetPath);
+        } finally {
+            dbHelper.setCheckpointPolicy(WeatherDbHelper.DEFAULT_WAL_AUTOCHECKPOINT_PAGES);
+            dbHelper.checkpoint();
+        }
+    }
+
+    /*
+     * Reads the catalogue into the location table, committing it in batches as it goes
+     */
+    private int importCatalogue(String assetPath) {
+        LocationImporter importer = new LocationImporter(dbHelper.getWritableDatabase(),
+                new LocationImporter.ProgressListener() {
+                    @Override
+                    public void onProgress(int importedCount, int skippedCount) {
+                        // Let a location picker show the locations as they arrive. Existing
+                        // locations are left as they are, so resolved IDs stay valid.
+                        changeNotifier.notifyChange(LocationEntry.CONTENT_URI);
+                    }
+                });
+
+        Reader catalogue = null;
+        try {
+            catalogue = new InputStreamReader(getContext().getAssets().open(assetPath), "UTF-8");
+            return importer.importCsv(catalogue);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Couldn't read the catalogue " + assetPath, e);
+        } finally {
+            if (catalogue != null) {
+                try {
+                    catalogue.close();
+                } catch (IOException e) {
+                    // Everything was read already
+                }
+            }
+        }
+    }
+
+    /*
+     * Deletes whole locations and their weather, least recently queried first, until the weather
+     * and viewed locations fit in maxBytes or only keepLocation is left. Returns the number of
+     * locations evicted.
+     */
+    private int evictLocations(long maxBytes, String keepLocation) {
+        final SQLiteDatabase db = dbHelper.getWritableDatabase();
+
+        // Evict based on the latest access times, not the ones from the last flush
+        accessTracker.flush();
+
+        // Catalogue locations that were never used hold no weather to evict
+        String selection = LocationEntry.COLUMN_LAST_ACCESS + " > 0";
+        String[] selectionArgs = null;
+        if (keepLocation != null) {
+            selection += " AND " + LocationEntry.COLUMN_LOCATION_SETTING + " != ?";
+            selectionArgs = new String[] {keepLocation};
+        }
+
+        Set<Long> evictedIds = new HashSet<>();
+        while (dbHelper.getEvictableBytes() > maxBytes) {
+            long locationId;
+            Cursor cursor = db.query(LocationEntry.TABLE_NAME,
+                    new String[] {LocationEntry._ID},
+                    selection,
+                    selectionArgs,
+                    null,
+                    null,
+                    LocationEntry.COLUMN_LAST_ACCESS + " ASC",
+                    "1"
+            );
+            try {
+                if (!cursor.moveToFirst()) {
+                    // Nothing left that may be evicted
+                    break;
+                }
+                locationId = cursor.getLong(0);
+            } finally {
+                cursor.close();
+            }
+
+            String[] locationIdArgs = new String[] {Long.toString(locationId)};
+            WeatherDbHelper.beginWriteTransaction(db);
+            try {
+                db.delete(WeatherEntry.TABLE_NAME, WeatherEntry.COLUMN_LOC_KEY + " = ?",
+                        locationIdArgs);
+                db.delete(LocationEntry.TABLE_NAME, LocationEntry._ID + " = ?", locationIdArgs);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            evictedIds.add(locationId);
+        }
+
+        int evictedCount = evictedIds.size();
+        if (evictedCount > 0) {
+            invalidateLocations(evictedIds);
+            locationIdResolver.invalidate();
+            changeNotifier.beginScope();
+            changeNotifier.notifyChange(WeatherEntry.CONTENT_URI);
+            changeNotifier.notifyChange(LocationEntry.CONTENT_URI);
+            changeNotifier.endScope();
+        }
+        return evictedCount;
+    }
+
+    /*
+     * Applies the whole batch in a single transaction, and observers are notified once per changed
+     * URI after the batch is done. Operations built withYieldAllowed mark points where the
+     * transaction may be committed and reopened so other connections waiting on the database can
+     * get in during a long batch. A batch without them is written as a whole or not at all; with
+     * them, only the operations between two yield points are.
+     */
+    @Override
+    public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        final SQLiteDatabase db = dbHelper.getWritableDatabase();
+        final int numOperations = operations.size();
+        final ContentProviderResult[] results = new ContentProviderResult[numOperations];
+
+        WeatherDbHelper.beginWriteTransaction(db);
+        BulkInserter inserter = new BulkInserter(db, WeatherEntry.TABLE_NAME);
+        batchInserter.set(inserter);
+        Set<Long> locationIds = new HashSet<>();
+        batchLocationIds.set(locationIds);
+        changeNotifier.beginScope();
+        boolean successful = false;
+        try {
+            for (int i = 0; i < numOperations; i++) {
+                ContentProviderOperation operation = operations.get(i);
+                if (i > 0 && operation.isYieldAllowed()) {
+                    // Only yields if another thread is actually waiting for the database
+                    db.yieldIfContendedSafely();
+                }
+                results[i] = operation.apply(this, results, i);
+            }
+            db.setTransactionSuccessful();
+            successful = true;
+            return results;
+        } finally {
+            batchInserter.remove();
+            batchLocationIds.remove();
+            inserter.close();
+            db.endTransaction();
+            // Readers may have cached rows of the changed locations from before the commit
+            invalidateLocations(locationIds);
+            if (!successful) {
+                // Locations inserted by the batch may have been rolled back
+                locationIdResolver.invalidate();
+            }
+            changeNotifier.endScope();
+        }
+    }
+
     /*
      * Method is specifically for assisting the testing framework run smoothly
      */
     @Override
     public void shutdown() {
+        changeNotifier.flush();
+        accessTracker.flush();
         dbHelper.close();
         super.shutdown();
     }
@@ -0,0 +1,233 @@
+package com.example.android.sunshine.app.data;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.support.v4.util.LruCache;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps the most recently read days of weather in memory, keyed by location setting and date, so
+ * paging between detail screens doesn't run the location/weather join again for a day that was
+ * just shown. Each day is cached with every column of the join decoded once, and a cursor for the
+ * projection the caller asked for is built from it.
+ *
+ * Rows are dropped when weather for their location is inserted. Any other write drops the whole
+ * cache, since its selection could touch any row.
+ */
+class WeatherRowCache {
+    // Number of days held at most
+    private static final int MAX_ROWS = 128;
+
+    // Every column a day is cached with, as they are queried from the join
+    static final String[] COLUMNS = {
+            WeatherEntry.TABLE_NAME + "." + WeatherEntry._ID,
+            WeatherEntry.COLUMN_LOC_KEY,
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_HUMIDITY,
+            WeatherEntry.COLUMN_PRESSURE,
+            WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherEntry.COLUMN_DEGREES,
+            WeatherEntry.COLUMN_LAST_UPDATED,
+            LocationEntry.COLUMN_LOCATION_SETTING,
+            LocationEntry.COLUMN_CITY_NAME,
+            LocationEntry.COLUMN_COORD_LAT,
+            LocationEntry.COLUMN_COORD_LONG
+    };
+
+    // The names the columns have in a cursor, tied to COLUMNS
+    private static final String[] COLUMN_NAMES = {
+            WeatherEntry._ID,
+            WeatherEntry.COLUMN_LOC_KEY,
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_HUMIDITY,
+            WeatherEntry.COLUMN_PRESSURE,
+            WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherEntry.COLUMN_DEGREES,
+            WeatherEntry.COLUMN_LAST_UPDATED,
+            LocationEntry.COLUMN_LOCATION_SETTING,
+            LocationEntry.COLUMN_CITY_NAME,
+            LocationEntry.COLUMN_COORD_LAT,
+            LocationEntry.COLUMN_COORD_LONG
+    };
+
+    // Storage class of each column, tied to COLUMNS
+    private static final int TYPE_LONG = 0;
+    private static final int TYPE_DOUBLE = 1;
+    private static final int TYPE_STRING = 2;
+    private static final int[] COLUMN_TYPES = {
+            TYPE_LONG, TYPE_LONG, TYPE_LONG, TYPE_STRING, TYPE_LONG, TYPE_LONG, TYPE_LONG,
+            TYPE_DOUBLE, TYPE_DOUBLE, TYPE_DOUBLE, TYPE_DOUBLE, TYPE_LONG,
+            TYPE_STRING, TYPE_STRING, TYPE_DOUBLE, TYPE_DOUBLE
+    };
+
+    // Index of the location_id column in COLUMNS
+    private static final int COL_LOC_KEY = 1;
+
+    private final LruCache<String, Object[]> rows = new LruCache<>(MAX_ROWS);
+
+    // Bumped by every invalidation. A row read from the database is only cached if nothing was
+    // invalidated while it was being read, so a write can't be undone by a slower reader.
+    // Guarded by this.
+    private long generation;
+
+    private static String getKey(String locationSetting, long date) {
+        return locationSetting + "|" + date;
+    }
+
+    // Index into COLUMNS of every name a column can be asked for by: as it's queried, bare, and
+    // qualified by either table. Built once so resolving a projection doesn't build any strings.
+    private static final Map<String, Integer> columnIndexes = buildColumnIndexes();
+
+    // What a null projection resolves to. Never modified.
+    private static final int[] ALL_COLUMNS = new int[COLUMNS.length];
+
+    static {
+        for (int i = 0; i < ALL_COLUMNS.length; i++) {
+            ALL_COLUMNS[i] = i;
+        }
+    }
+
+    private static Map<String, Integer> buildColumnIndexes() {
+        Map<String, Integer> indexes = new HashMap<>();
+        // Later names don't replace earlier ones, so a bare name keeps its first column
+        for (int i = 0; i < COLUMNS.length; i++) {
+            putIfAbsent(indexes, COLUMNS[i], i);
+            putIfAbsent(indexes, COLUMN_NAMES[i], i);
+            putIfAbsent(indexes, WeatherEntry.TABLE_NAME + "." + COLUMN_NAMES[i], i);
+            putIfAbsent(indexes, LocationEntry.TABLE_NAME + "." + COLUMN_NAMES[i], i);
+        }
+        // location._id is the same value as weather.location_id
+        indexes.put(LocationEntry.TABLE_NAME + "." + LocationEntry._ID, COL_LOC_KEY);
+        return indexes;
+    }
+
+    private static void putIfAbsent(Map<String, Integer> indexes, String name, int index) {
+        if (!indexes.containsKey(name)) {
+            indexes.put(name, index);
+        }
+    }
+
+    /*
+     * Returns the index into COLUMNS of every column of the projection, or null if the projection
+     * asks for something that isn't cached, like an expression. A null projection asks for every
+     * cached column.
+     */
+    static int[] resolveProjection(String[] projection) {
+        if (projection == null) {
+            return ALL_COLUMNS;
+        }
+
+        int[] columns = new int[projection.length];
+        for (int i = 0; i < projection.length; i++) {
+            Integer index = columnIndexes.get(projection[i]);
+            if (index == null) {
+                return null;
+            }
+            columns[i] = index;
+        }
+        return columns;
+    }
+
+    /*
+     * Decodes the current row of a cursor queried with COLUMNS
+     */
+    static Object[] readRow(Cursor cursor) {
+        Object[] row = new Object[COLUMNS.length];
+        for (int i = 0; i < row.length; i++) {
+            if (cursor.isNull(i)) {
+                continue;
+            }
+            switch (COLUMN_TYPES[i]) {
+                case TYPE_LONG:
+                    row[i] = cursor.getLong(i);
+                    break;
+                case TYPE_DOUBLE:
+                    row[i] = cursor.getDouble(i);
+                    break;
+                default:
+                    row[i] = cursor.getString(i);
+            }
+        }
+        return row;
+    }
+
+    /*
+     * Returns a cursor over just the given row, or an empty one if row is null, with the columns
+     * of the projection that resolveProjection resolved to columns
+     */
+    static Cursor toCursor(Object[] row, String[] projection, int[] columns) {
+        String[] names = new String[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            names[i] = projection == null ? COLUMN_NAMES[columns[i]] : stripTable(projection[i]);
+        }
+
+        MatrixCursor cursor = new MatrixCursor(names, 1);
+        if (row != null) {
+            Object[] values = new Object[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                values[i] = row[columns[i]];
+            }
+            cursor.addRow(values);
+        }
+        return cursor;
+    }
+
+    /*
+     * Returns the name SQLite would give the column in a cursor, without its table
+     */
+    private static String stripTable(String column) {
+        int dot = column.lastIndexOf('.');
+        return dot == -1 ? column : column.substring(dot + 1);
+    }
+
+    Object[] get(String locationSetting, long date) {
+        return rows.get(getKey(locationSetting, date));
+    }
+
+    /*
+     * Returns the generation to hand to put for a row about to be read from the database
+     */
+    synchronized long getGeneration() {
+        return generation;
+    }
+
+    /*
+     * Caches the row unless the cache was invalidated since readGeneration was taken
+     */
+    synchronized void put(String locationSetting, long date, Object[] row, long readGeneration) {
+        if (readGeneration == generation) {
+            rows.put(getKey(locationSetting, date), row);
+        }
+    }
+
+    /*
+     * Drops every day cached for the location with the given row ID
+     */
+    synchronized void invalidateLocation(long locationId) {
+        generation++;
+        for (Map.Entry<String, Object[]> entry : rows.snapshot().entrySet()) {
+            Object cachedLocationId = entry.getValue()[COL_LOC_KEY];
+            if (cachedLocationId != null && (Long) cachedLocationId == locationId) {
+                rows.remove(entry.getKey());
+            }
+        }
+    }
+
+    synchronized void invalidateAll() {
+        generation++;
+        rows.evictAll();
+    }
+}
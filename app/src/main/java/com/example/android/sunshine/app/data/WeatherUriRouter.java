@@ -0,0 +1,400 @@
+package com.example.android.sunshine.app.data;
+
+import android.net.Uri;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/**
+ * Matches the URIs of the WeatherProvider and decodes their parameters in a single pass over the
+ * encoded path and query. Everything is written into a Request that the caller reuses from one
+ * call to the next, and numbers are read straight out of the URI string, so routing a URI doesn't
+ * allocate anything besides the location setting and search query strings.
+ *
+ * Matches the same URIs the UriMatcher of the provider did: empty path segments are skipped, the
+ * date of weather/{location}/{date} must be all digits, and a query parameter given twice counts
+ * the first time. Numbers that can't be read in place are handed to Long.parseLong or
+ * Double.parseDouble, so malformed ones fail the same way they used to.
+ */
+class WeatherUriRouter {
+    static final int NO_MATCH = -1;
+
+    // Passed as the limit when the URI has none
+    static final int NO_LIMIT = -1;
+
+    // Largest number of digits that always fits in a long, or in the mantissa of a double exactly
+    private static final int MAX_LONG_DIGITS = 18;
+    private static final int MAX_EXACT_DOUBLE_DIGITS = 15;
+
+    // Powers of ten that are exact as doubles
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15,
+            1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    // Bits of the query parameters already read, so later copies of them are ignored. LIMIT is
+    // both WeatherEntry.PARAM_LIMIT and LocationEntry.PARAM_LIMIT.
+    private static final int SEEN_DATE = 1;
+    private static final int SEEN_AFTER = 1 << 1;
+    private static final int SEEN_END = 1 << 2;
+    private static final int SEEN_BUCKET_DAYS = 1 << 3;
+    private static final int SEEN_LIMIT = 1 << 4;
+    private static final int SEEN_LAT = 1 << 5;
+    private static final int SEEN_LONG = 1 << 6;
+    private static final int SEEN_MIN_LAT = 1 << 7;
+    private static final int SEEN_MAX_LAT = 1 << 8;
+    private static final int SEEN_MIN_LONG = 1 << 9;
+    private static final int SEEN_MAX_LONG = 1 << 10;
+    private static final int SEEN_QUERY = 1 << 11;
+
+    /*
+     * A routed URI: which of the provider's URIs it is and every parameter it carries. Parameters
+     * the URI doesn't have are left at 0, NO_LIMIT, NaN for coordinates and "" for the search
+     * query, the same defaults the WeatherContract's getters return. Reused for every URI routed
+     * on a thread, so nothing may be kept from it past the call it was routed for.
+     */
+    static final class Request {
+        Uri uri;
+        int match;
+        String locationSetting;
+        // The date of weather/{location}/{date}
+        long date;
+        long startDate;
+        long endDate;
+        long afterDate;
+        int bucketDays;
+        int limit;
+        double lat;
+        double lon;
+        double minLat;
+        double maxLat;
+        double minLon;
+        double maxLon;
+        String searchQuery;
+
+        void clear() {
+            uri = null;
+            match = NO_MATCH;
+            locationSetting = null;
+            date = 0;
+            startDate = 0;
+            endDate = 0;
+            afterDate = 0;
+            bucketDays = 0;
+            limit = NO_LIMIT;
+            lat = Double.NaN;
+            lon = Double.NaN;
+            minLat = Double.NaN;
+            maxLat = Double.NaN;
+            minLon = Double.NaN;
+            maxLon = Double.NaN;
+            searchQuery = "";
+        }
+
+        /*
+         * Returns the coordinate, which must have been passed as the query parameter
+         */
+        double requireCoordinate(double coordinate, String parameter) {
+            if (Double.isNaN(coordinate)) {
+                throw new IllegalArgumentException("Missing " + parameter + " in " + uri);
+            }
+            return coordinate;
+        }
+
+        /*
+         * Returns the number of days a page holds at most, or 0 if the URI isn't for a page
+         */
+        int getPageSize() {
+            return limit > 0 ? limit : 0;
+        }
+    }
+
+    /*
+     * Matches the URI and decodes its parameters into the request. Returns the code of the
+     * WeatherProvider for the URI, or NO_MATCH.
+     */
+    static int route(Uri uri, Request request) {
+        request.clear();
+        request.uri = uri;
+        if (!WeatherContract.CONTENT_AUTHORITY.equals(uri.getEncodedAuthority())) {
+            return NO_MATCH;
+        }
+        String path = uri.getEncodedPath();
+        if (path == null) {
+            return NO_MATCH;
+        }
+
+        // Bounds of the first three segments of the path
+        int start0 = -1, end0 = -1, start1 = -1, end1 = -1, start2 = -1, end2 = -1;
+        int segmentCount = 0;
+        int length = path.length();
+        int i = 0;
+        while (i < length) {
+            if (path.charAt(i) == '/') {
+                i++;
+                continue;
+            }
+            int end = path.indexOf('/', i);
+            if (end == -1) {
+                end = length;
+            }
+            switch (segmentCount) {
+                case 0:
+                    start0 = i;
+                    end0 = end;
+                    break;
+                case 1:
+                    start1 = i;
+                    end1 = end;
+                    break;
+                case 2:
+                    start2 = i;
+                    end2 = end;
+                    break;
+                default:
+                    // None of the URIs have more than three segments
+                    return NO_MATCH;
+            }
+            segmentCount++;
+            i = end;
+        }
+
+        int match = NO_MATCH;
+        if (segmentCount == 0) {
+            return NO_MATCH;
+        } else if (segmentEquals(path, start0, end0, WeatherContract.PATH_WEATHER)) {
+            if (segmentCount == 1) {
+                match = WeatherProvider.WEATHER;
+            } else {
+                request.locationSetting = decode(path, start1, end1);
+                if (segmentCount == 2) {
+                    match = WeatherProvider.WEATHER_WITH_LOCATION;
+                } else if (segmentEquals(path, start2, end2, WeatherContract.PATH_AGGREGATE)) {
+                    match = WeatherProvider.WEATHER_AGGREGATE;
+                } else if (isDigits(path, start2, end2)) {
+                    request.date = parseLong(path, start2, end2);
+                    match = WeatherProvider.WEATHER_WITH_LOCATION_AND_DATE;
+                }
+            }
+        } else if (segmentEquals(path, start0, end0, WeatherContract.PATH_LOCATION)) {
+            if (segmentCount == 1) {
+                match = WeatherProvider.LOCATION;
+            } else if (segmentCount == 2) {
+                if (segmentEquals(path, start1, end1, WeatherContract.PATH_NEAREST)) {
+                    match = WeatherProvider.LOCATION_NEAREST;
+                } else if (segmentEquals(path, start1, end1, WeatherContract.PATH_BOUNDING_BOX)) {
+                    match = WeatherProvider.LOCATION_BOUNDING_BOX;
+                } else if (segmentEquals(path, start1, end1, WeatherContract.PATH_SEARCH)) {
+                    match = WeatherProvider.LOCATION_SEARCH;
+                }
+            }
+        }
+        if (match == NO_MATCH) {
+            request.locationSetting = null;
+            request.date = 0;
+            return NO_MATCH;
+        }
+
+        String query = uri.getEncodedQuery();
+        if (query != null && match != WeatherProvider.WEATHER &&
+                match != WeatherProvider.LOCATION) {
+            readQuery(query, request);
+        }
+        request.match = match;
+        return match;
+    }
+
+    /*
+     * Reads the known parameters of the encoded query into the request
+     */
+    private static void readQuery(String query, Request request) {
+        int seen = 0;
+        int length = query.length();
+        int start = 0;
+        while (start < length) {
+            int end = query.indexOf('&', start);
+            if (end == -1) {
+                end = length;
+            }
+            int equals = query.indexOf('=', start);
+            if (equals == -1 || equals > end) {
+                equals = end;
+            }
+            int parameter = getParameterBit(query, start, equals);
+            int valueStart = equals + 1;
+            if ((seen & parameter) == 0) {
+                seen |= parameter;
+                // Parameters without a value, or with an empty one, count as missing
+                if (valueStart < end) {
+                    readParameter(parameter, query, valueStart, end, request);
+                }
+            }
+            start = end + 1;
+        }
+    }
+
+    private static void readParameter(int parameter, String query, int start, int end,
+                                      Request request) {
+        switch (parameter) {
+            case SEEN_DATE:
+                request.startDate = parseLong(query, start, end);
+                break;
+            case SEEN_AFTER:
+                request.afterDate = parseLong(query, start, end);
+                break;
+            case SEEN_END:
+                request.endDate = parseLong(query, start, end);
+                break;
+            case SEEN_BUCKET_DAYS:
+                request.bucketDays = parseInt(query, start, end);
+                break;
+            case SEEN_LIMIT:
+                request.limit = parseInt(query, start, end);
+                break;
+            case SEEN_LAT:
+                request.lat = parseDouble(query, start, end);
+                break;
+            case SEEN_LONG:
+                request.lon = parseDouble(query, start, end);
+                break;
+            case SEEN_MIN_LAT:
+                request.minLat = parseDouble(query, start, end);
+                break;
+            case SEEN_MAX_LAT:
+                request.maxLat = parseDouble(query, start, end);
+                break;
+            case SEEN_MIN_LONG:
+                request.minLon = parseDouble(query, start, end);
+                break;
+            case SEEN_MAX_LONG:
+                request.maxLon = parseDouble(query, start, end);
+                break;
+            case SEEN_QUERY:
+                // Query values read '+' as a space, like Uri.getQueryParameter
+                request.searchQuery = Uri.decode(query.substring(start, end).replace('+', ' '));
+                break;
+        }
+    }
+
+    /*
+     * Returns the bit of the parameter named by the key, or 0 for a parameter that isn't used
+     */
+    private static int getParameterBit(String query, int start, int end) {
+        if (segmentEquals(query, start, end, WeatherEntry.COLUMN_DATE)) {
+            return SEEN_DATE;
+        } else if (segmentEquals(query, start, end, WeatherEntry.PARAM_AFTER)) {
+            return SEEN_AFTER;
+        } else if (segmentEquals(query, start, end, WeatherEntry.PARAM_END)) {
+            return SEEN_END;
+        } else if (segmentEquals(query, start, end, WeatherEntry.PARAM_BUCKET_DAYS)) {
+            return SEEN_BUCKET_DAYS;
+        } else if (segmentEquals(query, start, end, WeatherEntry.PARAM_LIMIT)) {
+            return SEEN_LIMIT;
+        } else if (segmentEquals(query, start, end, LocationEntry.PARAM_LAT)) {
+            return SEEN_LAT;
+        } else if (segmentEquals(query, start, end, LocationEntry.PARAM_LONG)) {
+            return SEEN_LONG;
+        } else if (segmentEquals(query, start, end, LocationEntry.PARAM_MIN_LAT)) {
+            return SEEN_MIN_LAT;
+        } else if (segmentEquals(query, start, end, LocationEntry.PARAM_MAX_LAT)) {
+            return SEEN_MAX_LAT;
+        } else if (segmentEquals(query, start, end, LocationEntry.PARAM_MIN_LONG)) {
+            return SEEN_MIN_LONG;
+        } else if (segmentEquals(query, start, end, LocationEntry.PARAM_MAX_LONG)) {
+            return SEEN_MAX_LONG;
+        } else if (segmentEquals(query, start, end, LocationEntry.PARAM_QUERY)) {
+            return SEEN_QUERY;
+        }
+        return 0;
+    }
+
+    private static boolean segmentEquals(String s, int start, int end, String literal) {
+        int length = end - start;
+        return length == literal.length() && s.regionMatches(start, literal, 0, length);
+    }
+
+    private static boolean isDigits(String s, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return end > start;
+    }
+
+    /*
+     * Returns the decoded path segment, only copying it out when it's escaped
+     */
+    private static String decode(String s, int start, int end) {
+        String segment = s.substring(start, end);
+        return segment.indexOf('%') != -1 ? Uri.decode(segment) : segment;
+    }
+
+    private static long parseLong(String s, int start, int end) {
+        int i = start;
+        boolean negative = i < end && s.charAt(i) == '-';
+        if (negative) {
+            i++;
+        }
+        if (i == end || end - i > MAX_LONG_DIGITS) {
+            return Long.parseLong(Uri.decode(s.substring(start, end)));
+        }
+        long value = 0;
+        for (; i < end; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                return Long.parseLong(Uri.decode(s.substring(start, end)));
+            }
+            value = value * 10 + (c - '0');
+        }
+        return negative ? -value : value;
+    }
+
+    private static int parseInt(String s, int start, int end) {
+        long value = parseLong(s, start, end);
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            // Out of range for an int, so Integer.parseInt throws NumberFormatException
+            return Integer.parseInt(s.substring(start, end));
+        }
+        return (int) value;
+    }
+
+    /*
+     * Reads plain decimals like "-122.0839" exactly: the digits fit in the mantissa of a double
+     * and the power of ten is exact, so a single division rounds correctly. Anything else, like an
+     * exponent or an escape, goes to Double.parseDouble.
+     */
+    private static double parseDouble(String s, int start, int end) {
+        int i = start;
+        boolean negative = i < end && s.charAt(i) == '-';
+        if (negative) {
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean point = false;
+        for (; i < end; i++) {
+            char c = s.charAt(i);
+            if (c >= '0' && c <= '9') {
+                mantissa = mantissa * 10 + (c - '0');
+                digits++;
+                if (point) {
+                    fractionDigits++;
+                }
+            } else if (c == '.' && !point) {
+                point = true;
+            } else {
+                digits = -1;
+                break;
+            }
+        }
+        if (digits <= 0 || digits > MAX_EXACT_DOUBLE_DIGITS ||
+                fractionDigits >= POWERS_OF_TEN.length) {
+            return Double.parseDouble(Uri.decode(s.substring(start, end)));
+        }
+        double value = mantissa / POWERS_OF_TEN[fractionDigits];
+        return negative ? -value : value;
+    }
+}